@@ -1,16 +1,110 @@
 package com.github.topi314.lavasrc;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.DaemonThreadFactory;
 import com.sedmelluq.discord.lavaplayer.tools.DataFormatTools;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class ExtendedAudioSourceManager implements AudioSourceManager {
 
+	// playback urls are short-lived, a pre-warmed track is expected to be played soon
+	public static final Duration PREWARM_TTL = Duration.ofMinutes(2);
+	private static final Logger log = LoggerFactory.getLogger(ExtendedAudioSourceManager.class);
+	// shared by all sources, pre-warming mostly waits on I/O and should never compete with playback
+	private static final ThreadPoolExecutor PREWARM_EXECUTOR = createPrewarmExecutor();
+
+	private final Cache<String, Prewarm> prewarmed = Caffeine.newBuilder()
+		.maximumSize(1000)
+		.expireAfterWrite(PREWARM_TTL)
+		.build();
+
+	/**
+	 * Prepares the given track for playback, for example by resolving its playable url or mirror, so it can start without delay once it gets played.
+	 *
+	 * @return a future completing once the track is pre-warmed. Failures are not fatal, the track is then prepared as usual when played
+	 */
+	public CompletableFuture<Void> prewarmTrack(@NotNull AudioTrack track) {
+		if (track instanceof ExtendedAudioTrack) {
+			return ((ExtendedAudioTrack) track).prewarm();
+		}
+		return CompletableFuture.completedFuture(null);
+	}
+
+	/**
+	 * Runs the given loader in the background and keeps its result for {@link #takePrewarmed(String, Class)}.
+	 */
+	public CompletableFuture<Void> prewarm(@NotNull String key, @NotNull Callable<?> loader) {
+		var created = new Prewarm();
+		var prewarm = this.prewarmed.asMap().computeIfAbsent(key, unused -> created);
+		if (prewarm != created) {
+			return prewarm.future.thenApply(value -> null);
+		}
+		PREWARM_EXECUTOR.execute(() -> {
+			// the track might already be playing and load the value itself
+			if (!prewarm.start()) {
+				return;
+			}
+			try {
+				prewarm.future.complete(loader.call());
+			} catch (Throwable e) {
+				log.debug("Failed to pre-warm {}", key, e);
+				// failed pre-warms are dropped so the next call tries again
+				this.prewarmed.asMap().remove(key, prewarm);
+				prewarm.future.completeExceptionally(e);
+			}
+		});
+		return prewarm.future.thenApply(value -> null);
+	}
+
+	/**
+	 * Removes and returns the pre-warmed value for the given key, waiting for it if it is currently being loaded.
+	 * A pre-warm which is still queued is cancelled, loading the value directly is faster than waiting for unrelated pre-warms ahead of it.
+	 *
+	 * @return the pre-warmed value or null if there is none, it was still queued or pre-warming failed
+	 */
+	@Nullable
+	public <T> T takePrewarmed(@NotNull String key, @NotNull Class<T> type) throws InterruptedException {
+		var prewarm = this.prewarmed.asMap().remove(key);
+		if (prewarm == null) {
+			return null;
+		}
+		if (prewarm.start()) {
+			prewarm.future.cancel(false);
+			return null;
+		}
+		try {
+			var value = prewarm.future.get();
+			return type.isInstance(value) ? type.cast(value) : null;
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	private static ThreadPoolExecutor createPrewarmExecutor() {
+		var executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory("lavasrc-prewarm"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 	@Override
 	public void encodeTrack(AudioTrack track, DataOutput output) throws IOException {
 		var extendedTrack = (ExtendedAudioTrack) track;
@@ -47,6 +141,20 @@ public abstract class ExtendedAudioSourceManager implements AudioSourceManager {
 		return new ExtendedAudioTrackInfo(albumName, albumUrl, artistArtworkUrl, previewUrl, artistUrl, isPreview);
 	}
 
+	private static final class Prewarm {
+
+		private final CompletableFuture<Object> future = new CompletableFuture<>();
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		/**
+		 * @return true if the caller claimed the pre-warm, false if it was already started or taken
+		 */
+		private boolean start() {
+			return this.started.compareAndSet(false, true);
+		}
+
+	}
+
 	protected static class ExtendedAudioTrackInfo {
 		public final String albumName;
 		public final String albumUrl;
@@ -4,6 +4,8 @@ import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 import com.sedmelluq.discord.lavaplayer.track.DelegatedAudioTrack;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.CompletableFuture;
+
 public abstract class ExtendedAudioTrack extends DelegatedAudioTrack {
 
 	@Nullable
@@ -57,4 +59,14 @@ public abstract class ExtendedAudioTrack extends DelegatedAudioTrack {
 		return this.isPreview;
 	}
 
+	/**
+	 * Prepares this track for playback in the background, so {@link #process} can start without resolving anything first.
+	 * Tracks which have nothing to prepare complete immediately.
+	 *
+	 * @see ExtendedAudioSourceManager#prewarmTrack(com.sedmelluq.discord.lavaplayer.track.AudioTrack)
+	 */
+	public CompletableFuture<Void> prewarm() {
+		return CompletableFuture.completedFuture(null);
+	}
+
 }
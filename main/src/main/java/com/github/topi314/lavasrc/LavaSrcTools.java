@@ -1,5 +1,7 @@
 package com.github.topi314.lavasrc;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -9,7 +11,9 @@ import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -17,12 +21,20 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 
 import static com.sedmelluq.discord.lavaplayer.tools.FriendlyException.Severity.SUSPICIOUS;
 
 public class LavaSrcTools {
 
+	public static final Duration SHARE_LINK_CACHE_TTL = Duration.ofHours(24);
+	public static final long SHARE_LINK_CACHE_MAX_SIZE = 10000;
 	private static final Logger log = LoggerFactory.getLogger(LavaSrcTools.class);
+	// share links are shared in chats and loaded again and again, where they point to does not change
+	private static final Cache<String, String> SHARE_LINK_CACHE = Caffeine.newBuilder()
+		.maximumSize(SHARE_LINK_CACHE_MAX_SIZE)
+		.expireAfterWrite(SHARE_LINK_CACHE_TTL)
+		.build();
 
 	@Nullable
 	public static JsonBrowser fetchResponseAsJson(HttpInterface httpInterface, HttpUriRequest request) throws IOException {
@@ -48,4 +60,35 @@ public class LavaSrcTools {
 			return JsonBrowser.parse(data);
 		}
 	}
+
+	/**
+	 * Resolves where a share link redirects to without following the redirect. Resolved share links are cached, so repeated loads skip the request.
+	 *
+	 * @param request        the request to the share link
+	 * @param redirectStatus the status code the share link responds with
+	 * @param locationPrefix the prefix the redirect location must start with
+	 * @return the redirect location or null if the share link did not redirect as expected
+	 */
+	@Nullable
+	public static String resolveShareLink(HttpInterface httpInterface, HttpRequestBase request, int redirectStatus, String locationPrefix) throws IOException {
+		var url = request.getURI().toString();
+		var cached = SHARE_LINK_CACHE.getIfPresent(url);
+		if (cached != null) {
+			return cached;
+		}
+
+		request.setConfig(RequestConfig.custom().setRedirectsEnabled(false).build());
+		try (var response = httpInterface.execute(request)) {
+			if (response.getStatusLine().getStatusCode() != redirectStatus) {
+				return null;
+			}
+			var location = response.getFirstHeader("Location");
+			if (location == null || !location.getValue().startsWith(locationPrefix)) {
+				return null;
+			}
+			SHARE_LINK_CACHE.put(url, location.getValue());
+			return location.getValue();
+		}
+	}
+
 }
@@ -0,0 +1,221 @@
+package com.github.topi314.lavasrc;
+
+import com.sedmelluq.discord.lavaplayer.tools.DaemonThreadFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps an expiring token fresh.
+ * <p>
+ * Reads are a single volatile read as long as the token is valid. The token is loaded on first use and from then on refreshed in the background
+ * shortly before it expires. Concurrent refreshes, whether triggered by readers of an expired token or by the background refresh, share a single load.
+ *
+ * @param <T> the type of the token
+ */
+public class TokenProvider<T> implements Closeable {
+
+	public static final Duration DEFAULT_REFRESH_AHEAD = Duration.ofMinutes(1);
+	/**
+	 * Request config for HTTP requests of loaders, so a hanging token endpoint can't block a refresh forever.
+	 */
+	public static final RequestConfig LOAD_REQUEST_CONFIG = RequestConfig.custom()
+		.setConnectionRequestTimeout(10000)
+		.setConnectTimeout(10000)
+		.setSocketTimeout(10000)
+		.build();
+	private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+	private static final Logger log = LoggerFactory.getLogger(TokenProvider.class);
+	// shared by all token providers and only used for timing, the loads run on LOAD_EXECUTOR
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("lavasrc-token-refresh"));
+	// a slow token endpoint only blocks one of these threads, so refreshes of other sources still run on time
+	private static final ThreadPoolExecutor LOAD_EXECUTOR = createLoadExecutor();
+
+	private final String name;
+	private final Loader<T> loader;
+	private final Duration refreshAhead;
+	private final AtomicReference<CompletableFuture<Token<T>>> pending = new AtomicReference<>();
+	@Nullable
+	private volatile Token<T> token;
+	@Nullable
+	private volatile ScheduledFuture<?> scheduledRefresh;
+	private volatile boolean closed;
+
+	public TokenProvider(@NotNull String name, @NotNull Loader<T> loader) {
+		this(name, loader, DEFAULT_REFRESH_AHEAD);
+	}
+
+	/**
+	 * @param name         the name used in log messages
+	 * @param refreshAhead how long before the expiry the token is refreshed. Tokens living shorter than twice this are refreshed after half their lifetime
+	 */
+	public TokenProvider(@NotNull String name, @NotNull Loader<T> loader, @NotNull Duration refreshAhead) {
+		this.name = name;
+		this.loader = loader;
+		this.refreshAhead = refreshAhead;
+	}
+
+	/**
+	 * @return the current token, loading it first if there is none or it expired
+	 */
+	@NotNull
+	public T get() throws IOException {
+		var token = this.token;
+		if (token != null && !token.isExpired()) {
+			return token.value;
+		}
+		return this.refresh().value;
+	}
+
+	/**
+	 * @return the current token or null if there is none or it expired
+	 */
+	@Nullable
+	public Token<T> getIfValid() {
+		var token = this.token;
+		return token == null || token.isExpired() ? null : token;
+	}
+
+	/**
+	 * Loads a new token now, joining a load which is already in flight.
+	 */
+	@NotNull
+	public Token<T> refresh() throws IOException {
+		try {
+			return this.refreshAsync().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while refreshing " + this.name + " token", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException("Failed to refresh " + this.name + " token", e.getCause());
+		}
+	}
+
+	/**
+	 * Drops the current token, for example because it got rejected. The next read loads a new one.
+	 */
+	public void invalidate() {
+		this.token = null;
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+		var scheduledRefresh = this.scheduledRefresh;
+		if (scheduledRefresh != null) {
+			scheduledRefresh.cancel(false);
+		}
+	}
+
+	private CompletableFuture<Token<T>> refreshAsync() {
+		var created = new CompletableFuture<Token<T>>();
+		var existing = this.pending.compareAndExchange(null, created);
+		if (existing != null) {
+			return existing;
+		}
+
+		// the thread winning the race loads the token itself, everyone else waits for it
+		try {
+			var loaded = this.loader.load();
+			// an expired token would be refreshed right away again, so treat it like a failed load
+			if (loaded == null || loaded.isExpired()) {
+				throw new IOException("Loaded " + this.name + " token is missing or already expired");
+			}
+			this.token = loaded;
+			this.schedule(loaded);
+			this.pending.set(null);
+			created.complete(loaded);
+		} catch (Throwable e) {
+			this.pending.set(null);
+			created.completeExceptionally(e);
+		}
+		return created;
+	}
+
+	private void schedule(Token<T> token) {
+		var lifetime = Duration.between(Instant.now(), token.expiresAt);
+		var ahead = this.refreshAhead.compareTo(lifetime.dividedBy(2)) > 0 ? lifetime.dividedBy(2) : this.refreshAhead;
+		var delay = lifetime.minus(ahead);
+		// very short lived tokens must not keep the scheduler busy with back to back refreshes
+		this.schedule(delay.compareTo(RETRY_DELAY) < 0 ? RETRY_DELAY : delay);
+	}
+
+	private void schedule(Duration delay) {
+		if (this.closed) {
+			return;
+		}
+		var previous = this.scheduledRefresh;
+		if (previous != null) {
+			previous.cancel(false);
+		}
+		this.scheduledRefresh = SCHEDULER.schedule(() -> LOAD_EXECUTOR.execute(this::refreshInBackground), Math.max(0, delay.toMillis()), TimeUnit.MILLISECONDS);
+	}
+
+	private static ThreadPoolExecutor createLoadExecutor() {
+		var executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory("lavasrc-token-load"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private void refreshInBackground() {
+		if (this.closed) {
+			return;
+		}
+		try {
+			this.refresh();
+			log.debug("Refreshed {} token in the background", this.name);
+		} catch (Exception e) {
+			log.warn("Failed to refresh {} token in the background, retrying in {}", this.name, RETRY_DELAY, e);
+			this.schedule(RETRY_DELAY);
+		}
+	}
+
+	@FunctionalInterface
+	public interface Loader<T> {
+
+		@NotNull
+		Token<T> load() throws Exception;
+
+	}
+
+	public static final class Token<T> {
+
+		@NotNull
+		public final T value;
+		@NotNull
+		public final Instant expiresAt;
+
+		public Token(@NotNull T value, @NotNull Instant expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+		public boolean isExpired() {
+			return !Instant.now().isBefore(this.expiresAt);
+		}
+
+	}
+
+}
@@ -369,6 +369,8 @@ public class AppleMusicSourceManager extends MirroringAudioSourceManager impleme
 			return AudioReference.NO_TRACK;
 		}
 
+		this.preloadMirrors(tracks);
+
 		var artworkUrl = this.parseArtworkUrl(json.get("data").index(0).get("attributes").get("artwork"));
 		var author = json.get("data").index(0).get("attributes").get("curatorName").text();
 		return new AppleMusicAudioPlaylist(json.get("data").index(0).get("attributes").get("name").text(), tracks, ExtendedAudioPlaylist.Type.PLAYLIST, json.get("data").index(0).get("attributes").get("url").text(), artworkUrl, author, (int) json.get("data").index(0).get("attributes").get("trackCount").asLong(0));
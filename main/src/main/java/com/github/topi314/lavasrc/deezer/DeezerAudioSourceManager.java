@@ -1,5 +1,7 @@
 package com.github.topi314.lavasrc.deezer;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.topi314.lavalyrics.AudioLyricsManager;
 import com.github.topi314.lavalyrics.lyrics.AudioLyrics;
 import com.github.topi314.lavalyrics.lyrics.BasicAudioLyrics;
@@ -8,6 +10,7 @@ import com.github.topi314.lavasearch.result.AudioSearchResult;
 import com.github.topi314.lavasearch.result.BasicAudioSearchResult;
 import com.github.topi314.lavasrc.ExtendedAudioSourceManager;
 import com.github.topi314.lavasrc.LavaSrcTools;
+import com.github.topi314.lavasrc.TokenProvider;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.tools.JsonBrowser;
@@ -19,6 +22,8 @@ import com.sedmelluq.discord.lavaplayer.track.*;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -52,12 +57,23 @@ public class DeezerAudioSourceManager extends ExtendedAudioSourceManager impleme
 	public static final String PUBLIC_API_BASE = "https://api.deezer.com/2.0";
 	public static final String PRIVATE_API_BASE = "https://www.deezer.com/ajax/gw-light.php";
 	public static final String MEDIA_BASE = "https://media.deezer.com/v1";
+	// used if Deezer does not send an expiry with a track token
+	public static final Duration DEFAULT_TRACK_TOKEN_TTL = Duration.ofHours(1);
+	public static final long TRACK_TOKEN_CACHE_MAX_SIZE = 10000;
+	// get_url error codes meaning the license token or the track token is no longer valid
+	static final int MEDIA_ERROR_INVALID_LICENSE_TOKEN = 2000;
+	static final int MEDIA_ERROR_TRACK_TOKEN_EXPIRED = 2001;
 	public static final Set<AudioSearchResult.Type> SEARCH_TYPES = Set.of(AudioSearchResult.Type.TRACK, AudioSearchResult.Type.ALBUM, AudioSearchResult.Type.PLAYLIST, AudioSearchResult.Type.ARTIST);
 	private static final Logger log = LoggerFactory.getLogger(DeezerAudioSourceManager.class);
 
 	private final String masterDecryptionKey;
 	private final HttpInterfaceManager httpInterfaceManager;
-	private Tokens tokens;
+	private final TokenProvider<Tokens> tokens = new TokenProvider<>("deezer", this::refreshSession);
+	// track tokens are valid for a while, so replaying a track only needs the media url
+	private final Cache<String, TokenProvider.Token<String>> trackTokens = Caffeine.newBuilder()
+		.maximumSize(TRACK_TOKEN_CACHE_MAX_SIZE)
+		.expireAfterWrite(DEFAULT_TRACK_TOKEN_TTL.multipliedBy(24))
+		.build();
 
 	public DeezerAudioSourceManager(String masterDecryptionKey) {
 		if (masterDecryptionKey == null || masterDecryptionKey.isEmpty()) {
@@ -67,8 +83,9 @@ public class DeezerAudioSourceManager extends ExtendedAudioSourceManager impleme
 		this.httpInterfaceManager = HttpClientTools.createDefaultThreadLocalManager();
 	}
 
-	private void refreshSession() throws IOException {
+	private TokenProvider.Token<Tokens> refreshSession() throws IOException {
 		var getSessionID = new HttpPost(DeezerAudioSourceManager.PRIVATE_API_BASE + "?method=deezer.ping&input=3&api_version=1.0&api_token=");
+		getSessionID.setConfig(TokenProvider.LOAD_REQUEST_CONFIG);
 		var json = LavaSrcTools.fetchResponseAsJson(this.getHttpInterface(), getSessionID);
 
 		checkResponse(json, "Failed to get session ID: ");
@@ -76,21 +93,66 @@ public class DeezerAudioSourceManager extends ExtendedAudioSourceManager impleme
 
 		var getUserToken = new HttpPost(DeezerAudioSourceManager.PRIVATE_API_BASE + "?method=deezer.getUserData&input=3&api_version=1.0&api_token=");
 		getUserToken.setHeader("Cookie", "sid=" + sessionID);
+		getUserToken.setConfig(TokenProvider.LOAD_REQUEST_CONFIG);
 		json = LavaSrcTools.fetchResponseAsJson(this.getHttpInterface(), getUserToken);
 
 		checkResponse(json, "Failed to get user token: ");
-		this.tokens = new Tokens(
+		var tokens = new Tokens(
+			sessionID,
 			json.get("results").get("checkForm").text(),
 			json.get("results").get("USER").get("OPTIONS").get("license_token").text(),
 			Instant.now().plus(3600, ChronoUnit.SECONDS)
 		);
+		return new TokenProvider.Token<>(tokens, tokens.expireAt);
 	}
 
 	public Tokens getTokens() throws IOException {
-		if (this.tokens == null || Instant.now().isAfter(this.tokens.expireAt)) {
-			this.refreshSession();
+		return this.tokens.get();
+	}
+
+	/**
+	 * Drops the session and all track tokens, for example because Deezer rejected them. They are requested again on next use.
+	 */
+	public void invalidateTokens() {
+		this.tokens.invalidate();
+		this.trackTokens.invalidateAll();
+	}
+
+	/**
+	 * Drops the cached token of the given track, so it is requested again on next use.
+	 */
+	public void invalidateTrackToken(String id) {
+		this.trackTokens.invalidate(id);
+	}
+
+	/**
+	 * @return the token needed to request the media url of the given track, which is reused until it expires
+	 */
+	public String getTrackToken(String id, Tokens tokens) throws IOException {
+		var cached = this.trackTokens.getIfPresent(id);
+		if (cached != null && !cached.isExpired()) {
+			return cached.value;
 		}
-		return this.tokens;
+
+		var getTrackToken = new HttpPost(PRIVATE_API_BASE + "?method=song.getData&input=3&api_version=1.0&api_token=" + tokens.api);
+		if (tokens.session != null) {
+			getTrackToken.setHeader("Cookie", "sid=" + tokens.session);
+		}
+		getTrackToken.setEntity(new StringEntity("{\"sng_id\":\"" + id + "\"}", ContentType.APPLICATION_JSON));
+		var json = LavaSrcTools.fetchResponseAsJson(this.getHttpInterface(), getTrackToken);
+
+		checkResponse(json, "Failed to get track token: ");
+		var trackToken = json.get("results").get("TRACK_TOKEN").text();
+		if (trackToken == null) {
+			if (!json.get("error").get("VALID_TOKEN_REQUIRED").isNull()) {
+				throw new DeezerTokenException("Failed to get track token: session got rejected", true);
+			}
+			throw new IllegalStateException("Failed to get track token: " + json.get("error").format());
+		}
+		var expiresIn = json.get("results").get("TRACK_TOKEN_EXPIRE").asLong(0);
+		var expiresAt = expiresIn > 0 ? Instant.ofEpochSecond(expiresIn) : Instant.now().plus(DEFAULT_TRACK_TOKEN_TTL);
+		this.trackTokens.put(id, new TokenProvider.Token<>(trackToken, expiresAt));
+		return trackToken;
 	}
 
 	static void checkResponse(JsonBrowser json, String message) throws IllegalStateException {
@@ -217,17 +279,8 @@ public class DeezerAudioSourceManager extends ExtendedAudioSourceManager impleme
 
 			// If the identifier is a share URL, we need to follow the redirect to find out the real url behind it
 			if (identifier.startsWith(SHARE_URL)) {
-				var request = new HttpGet(identifier);
-				request.setConfig(RequestConfig.custom().setRedirectsEnabled(false).build());
-				try (var response = this.httpInterfaceManager.getInterface().execute(request)) {
-					if (response.getStatusLine().getStatusCode() == 302) {
-						var location = response.getFirstHeader("Location").getValue();
-						if (location.startsWith("https://www.deezer.com/")) {
-							return this.loadItem(location, preview);
-						}
-					}
-					return null;
-				}
+				var location = LavaSrcTools.resolveShareLink(this.httpInterfaceManager.getInterface(), new HttpGet(identifier), 302, "https://www.deezer.com/");
+				return location == null ? null : this.loadItem(location, preview);
 			}
 
 			var matcher = URL_PATTERN.matcher(identifier);
@@ -458,6 +511,7 @@ public class DeezerAudioSourceManager extends ExtendedAudioSourceManager impleme
 
 	@Override
 	public void shutdown() {
+		this.tokens.close();
 		try {
 			this.httpInterfaceManager.close();
 		} catch (IOException e) {
@@ -484,11 +538,18 @@ public class DeezerAudioSourceManager extends ExtendedAudioSourceManager impleme
 	}
 
 	public static class Tokens {
+		@Nullable
+		public String session;
 		public String api;
 		public String license;
 		public Instant expireAt;
 
 		public Tokens(String api, String license, Instant expireAt) {
+			this(null, api, license, expireAt);
+		}
+
+		public Tokens(@Nullable String session, String api, String license, Instant expireAt) {
+			this.session = session;
 			this.api = api;
 			this.license = license;
 			this.expireAt = expireAt;
@@ -5,7 +5,6 @@ import com.github.topi314.lavasrc.LavaSrcTools;
 import com.sedmelluq.discord.lavaplayer.container.mp3.Mp3AudioTrack;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
-import com.sedmelluq.discord.lavaplayer.tools.JsonBrowser;
 import com.sedmelluq.discord.lavaplayer.tools.io.PersistentHttpStream;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
@@ -20,7 +19,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 public class DeezerAudioTrack extends ExtendedAudioTrack {
 
@@ -36,44 +35,40 @@ public class DeezerAudioTrack extends ExtendedAudioTrack {
 	}
 
 	private URI getTrackMediaURI() throws IOException, URISyntaxException {
-		var getSessionID = new HttpPost(DeezerAudioSourceManager.PRIVATE_API_BASE + "?method=deezer.ping&input=3&api_version=1.0&api_token=");
-		var json = LavaSrcTools.fetchResponseAsJson(this.sourceManager.getHttpInterface(), getSessionID);
-
-		this.checkResponse(json, "Failed to get session ID: ");
-		var sessionID = json.get("results").get("SESSION").text();
-
-		var getUserToken = new HttpPost(DeezerAudioSourceManager.PRIVATE_API_BASE + "?method=deezer.getUserData&input=3&api_version=1.0&api_token=");
-		getUserToken.setHeader("Cookie", "sid=" + sessionID);
-		json = LavaSrcTools.fetchResponseAsJson(this.sourceManager.getHttpInterface(), getUserToken);
-
-		this.checkResponse(json, "Failed to get user token: ");
-		var userLicenseToken = json.get("results").get("USER").get("OPTIONS").get("license_token").text();
-		var apiToken = json.get("results").get("checkForm").text();
-
-		var getTrackToken = new HttpPost(DeezerAudioSourceManager.PRIVATE_API_BASE + "?method=song.getData&input=3&api_version=1.0&api_token=" + apiToken);
-		getTrackToken.setEntity(new StringEntity("{\"sng_id\":\"" + this.trackInfo.identifier + "\"}", ContentType.APPLICATION_JSON));
-		json = LavaSrcTools.fetchResponseAsJson(this.sourceManager.getHttpInterface(), getTrackToken);
+		try {
+			return this.getTrackMediaURI(this.sourceManager.getTokens());
+		} catch (DeezerTokenException e) {
+			// the session or track token got revoked before it expired, retry once with new ones
+			if (e.isSessionRejected()) {
+				this.sourceManager.invalidateTokens();
+			} else {
+				this.sourceManager.invalidateTrackToken(this.trackInfo.identifier);
+			}
+			return this.getTrackMediaURI(this.sourceManager.getTokens());
+		} catch (IllegalStateException e) {
+			// errors like missing rights only concern this track
+			this.sourceManager.invalidateTrackToken(this.trackInfo.identifier);
+			throw e;
+		}
+	}
 
-		this.checkResponse(json, "Failed to get track token: ");
-		var trackToken = json.get("results").get("TRACK_TOKEN").text();
+	private URI getTrackMediaURI(DeezerAudioSourceManager.Tokens tokens) throws IOException, URISyntaxException {
+		var trackToken = this.sourceManager.getTrackToken(this.trackInfo.identifier, tokens);
 
 		var getMediaURL = new HttpPost(DeezerAudioSourceManager.MEDIA_BASE + "/get_url");
-		getMediaURL.setEntity(new StringEntity("{\"license_token\":\"" + userLicenseToken + "\",\"media\": [{\"type\": \"FULL\",\"formats\": [{\"cipher\": \"BF_CBC_STRIPE\", \"format\": \"MP3_128\"}]}],\"track_tokens\": [\"" + trackToken + "\"]}", ContentType.APPLICATION_JSON));
-		json = LavaSrcTools.fetchResponseAsJson(this.sourceManager.getHttpInterface(), getMediaURL);
-
-		this.checkResponse(json, "Failed to get media URL: ");
-		return new URI(json.get("data").index(0).get("media").index(0).get("sources").index(0).get("url").text());
-	}
-
-	private void checkResponse(JsonBrowser json, String message) throws IllegalStateException {
-		if (json == null) {
-			throw new IllegalStateException(message + "No response");
-		}
-		var errors = json.get("data").index(0).get("errors").values();
-		if (!errors.isEmpty()) {
-			var errorsStr = errors.stream().map(error -> error.get("code").text() + ": " + error.get("message").text()).collect(Collectors.joining(", "));
-			throw new IllegalStateException(message + errorsStr);
+		getMediaURL.setEntity(new StringEntity("{\"license_token\":\"" + tokens.license + "\",\"media\": [{\"type\": \"FULL\",\"formats\": [{\"cipher\": \"BF_CBC_STRIPE\", \"format\": \"MP3_128\"}]}],\"track_tokens\": [\"" + trackToken + "\"]}", ContentType.APPLICATION_JSON));
+		var json = LavaSrcTools.fetchResponseAsJson(this.sourceManager.getHttpInterface(), getMediaURL);
+
+		if (json != null) {
+			for (var error : json.get("data").index(0).get("errors").values()) {
+				var code = (int) error.get("code").asLong(0);
+				if (code == DeezerAudioSourceManager.MEDIA_ERROR_INVALID_LICENSE_TOKEN || code == DeezerAudioSourceManager.MEDIA_ERROR_TRACK_TOKEN_EXPIRED) {
+					throw new DeezerTokenException("Failed to get media URL: " + code + ": " + error.get("message").text(), code == DeezerAudioSourceManager.MEDIA_ERROR_INVALID_LICENSE_TOKEN);
+				}
+			}
 		}
+		DeezerAudioSourceManager.checkResponse(json, "Failed to get media URL: ");
+		return new URI(json.get("data").index(0).get("media").index(0).get("sources").index(0).get("url").text());
 	}
 
 	private byte[] getTrackDecryptionKey() throws NoSuchAlgorithmException {
@@ -98,13 +93,25 @@ public class DeezerAudioTrack extends ExtendedAudioTrack {
 					processDelegate(new Mp3AudioTrack(this.trackInfo, stream), executor);
 				}
 			} else {
-				try (var stream = new DeezerPersistentHttpStream(httpInterface, this.getTrackMediaURI(), this.trackInfo.length, this.getTrackDecryptionKey())) {
+				var mediaURI = this.sourceManager.takePrewarmed(this.trackInfo.identifier, URI.class);
+				if (mediaURI == null) {
+					mediaURI = this.getTrackMediaURI();
+				}
+				try (var stream = new DeezerPersistentHttpStream(httpInterface, mediaURI, this.trackInfo.length, this.getTrackDecryptionKey())) {
 					processDelegate(new Mp3AudioTrack(this.trackInfo, stream), executor);
 				}
 			}
 		}
 	}
 
+	@Override
+	public CompletableFuture<Void> prewarm() {
+		if (this.isPreview) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return this.sourceManager.prewarm(this.trackInfo.identifier, this::getTrackMediaURI);
+	}
+
 	@Override
 	protected AudioTrack makeShallowClone() {
 		return new DeezerAudioTrack(this.trackInfo, this.albumName, this.albumUrl, this.artistUrl, this.artistArtworkUrl, this.previewUrl, this.isPreview, this.sourceManager);
@@ -0,0 +1,22 @@
+package com.github.topi314.lavasrc.deezer;
+
+/**
+ * Thrown when Deezer rejects a token used for playback, as opposed to errors specific to a track like missing rights.
+ */
+class DeezerTokenException extends IllegalStateException {
+
+	private final boolean sessionRejected;
+
+	/**
+	 * @param sessionRejected whether the session or license token got rejected, otherwise only the track token did
+	 */
+	DeezerTokenException(String message, boolean sessionRejected) {
+		super(message);
+		this.sessionRejected = sessionRejected;
+	}
+
+	boolean isSessionRejected() {
+		return this.sessionRejected;
+	}
+
+}
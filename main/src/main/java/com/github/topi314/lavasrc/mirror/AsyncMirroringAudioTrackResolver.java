@@ -0,0 +1,54 @@
+package com.github.topi314.lavasrc.mirror;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MirroringAudioTrackResolver} which resolves mirrors without blocking the calling thread.
+ */
+@FunctionalInterface
+public interface AsyncMirroringAudioTrackResolver extends MirroringAudioTrackResolver {
+
+	/**
+	 * Resolves the mirror for the given track. Cancelling or timing out the returned future should cancel all pending loads.
+	 */
+	CompletableFuture<AudioItem> applyAsync(MirroringAudioTrack mirroringAudioTrack);
+
+	default CompletableFuture<AudioItem> applyAsync(MirroringAudioTrack mirroringAudioTrack, Duration timeout) {
+		return this.applyAsync(mirroringAudioTrack).orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Resolves the mirror for the given track and waits for it. Exceptions of the resolution are thrown as is, like a synchronous resolver would.
+	 */
+	@Override
+	default AudioItem apply(MirroringAudioTrack mirroringAudioTrack) {
+		try {
+			return this.applyAsync(mirroringAudioTrack).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Adapts a synchronous resolver by running it on the given executor. Async resolvers are returned as is.
+	 */
+	static AsyncMirroringAudioTrackResolver of(MirroringAudioTrackResolver resolver, Executor executor) {
+		if (resolver instanceof AsyncMirroringAudioTrackResolver) {
+			return (AsyncMirroringAudioTrackResolver) resolver;
+		}
+		return mirroringAudioTrack -> CompletableFuture.supplyAsync(() -> resolver.apply(mirroringAudioTrack), executor);
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.github.topi314.lavasrc.mirror;
+
+import java.time.Duration;
+
+/**
+ * Error rate based circuit breaker. Once the failure rate of the last calls reaches the threshold the circuit opens and all calls are rejected.
+ * After the open duration a single probe call is let through, which either closes the circuit again or keeps it open.
+ * <p>
+ * Every permitted call gets the generation of the state it was admitted in. Outcomes of calls admitted before the last state change are ignored,
+ * so a slow call admitted while the circuit was closed can't decide the outcome of the probe.
+ */
+public class CircuitBreaker {
+
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+	public static final int DEFAULT_MINIMUM_CALLS = 10;
+	public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+	public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+	public static final long NOT_PERMITTED = -1;
+
+	private final int minimumCalls;
+	private final double failureRateThreshold;
+	private final long openDurationNanos;
+
+	// ring buffer of the outcomes of the last calls, true means failed
+	private final boolean[] outcomes;
+	private int index;
+	private int calls;
+	private int failures;
+
+	private State state = State.CLOSED;
+	private long openedAt;
+	private boolean probing;
+	// incremented on every state change
+	private long generation;
+
+	public CircuitBreaker() {
+		this(DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_OPEN_DURATION);
+	}
+
+	/**
+	 * @param windowSize           the number of most recent calls the failure rate is calculated from
+	 * @param minimumCalls         the number of calls needed before the circuit can open
+	 * @param failureRateThreshold the failure rate between 0 and 1 at which the circuit opens
+	 * @param openDuration         how long the circuit stays open before a probe call is let through
+	 */
+	public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration) {
+		if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+			throw new IllegalArgumentException("Window size and minimum calls must be greater than 0 and minimum calls must not exceed the window size");
+		}
+		this.outcomes = new boolean[windowSize];
+		this.minimumCalls = minimumCalls;
+		this.failureRateThreshold = failureRateThreshold;
+		this.openDurationNanos = openDuration.toNanos();
+	}
+
+	/**
+	 * @return the permit of the call or {@link #NOT_PERMITTED}. Every permitted call must be followed by {@link #onSuccess(long)}, {@link #onFailure(long)} or {@link #onIgnored(long)} with its permit
+	 */
+	public synchronized long tryAcquire() {
+		switch (this.state) {
+			case OPEN:
+				if (System.nanoTime() - this.openedAt < this.openDurationNanos) {
+					return NOT_PERMITTED;
+				}
+				this.state = State.HALF_OPEN;
+				this.generation++;
+				this.probing = true;
+				return this.generation;
+
+			case HALF_OPEN:
+				if (this.probing) {
+					return NOT_PERMITTED;
+				}
+				this.probing = true;
+				return this.generation;
+
+			default:
+				return this.generation;
+		}
+	}
+
+	public synchronized void onSuccess(long permit) {
+		if (permit != this.generation) {
+			return;
+		}
+		if (this.state == State.HALF_OPEN) {
+			this.close();
+			return;
+		}
+		this.record(false);
+	}
+
+	public synchronized void onFailure(long permit) {
+		if (permit != this.generation) {
+			return;
+		}
+		if (this.state == State.HALF_OPEN) {
+			this.open();
+			return;
+		}
+		this.record(true);
+		if (this.state == State.CLOSED && this.calls >= this.minimumCalls && (double) this.failures / this.calls >= this.failureRateThreshold) {
+			this.open();
+		}
+	}
+
+	/**
+	 * Releases a permitted call without recording an outcome, for example because it got cancelled.
+	 */
+	public synchronized void onIgnored(long permit) {
+		if (permit == this.generation && this.state == State.HALF_OPEN) {
+			this.probing = false;
+		}
+	}
+
+	public synchronized State getState() {
+		return this.state;
+	}
+
+	private void record(boolean failed) {
+		if (this.calls == this.outcomes.length) {
+			if (this.outcomes[this.index]) {
+				this.failures--;
+			}
+		} else {
+			this.calls++;
+		}
+		this.outcomes[this.index] = failed;
+		if (failed) {
+			this.failures++;
+		}
+		this.index = (this.index + 1) % this.outcomes.length;
+	}
+
+	private void open() {
+		this.state = State.OPEN;
+		this.generation++;
+		this.openedAt = System.nanoTime();
+		this.probing = false;
+	}
+
+	private void close() {
+		this.state = State.CLOSED;
+		this.generation++;
+		this.probing = false;
+		this.index = 0;
+		this.calls = 0;
+		this.failures = 0;
+	}
+
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+}
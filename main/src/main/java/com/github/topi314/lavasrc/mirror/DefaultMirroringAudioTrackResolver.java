@@ -2,29 +2,53 @@ package com.github.topi314.lavasrc.mirror;
 
 import com.github.topi314.lavasrc.applemusic.AppleMusicSourceManager;
 import com.github.topi314.lavasrc.spotify.SpotifySourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioItem;
 import com.sedmelluq.discord.lavaplayer.track.AudioReference;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class DefaultMirroringAudioTrackResolver implements MirroringAudioTrackResolver {
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+public class DefaultMirroringAudioTrackResolver implements AsyncMirroringAudioTrackResolver {
 
 	private static final Logger log = LoggerFactory.getLogger(DefaultMirroringAudioTrackResolver.class);
 
-	private String[] providers = {
+	private static final String[] DEFAULT_PROVIDERS = {
 		"ytsearch:\"" + MirroringAudioSourceManager.ISRC_PATTERN + "\"",
 		"ytsearch:" + MirroringAudioSourceManager.QUERY_PATTERN
 	};
 
+	private final List<MirroringProvider> providers;
+
+	@Nullable
+	private Duration hedgeDelay;
+
 	public DefaultMirroringAudioTrackResolver(String[] providers) {
-		if (providers != null && providers.length > 0) {
-			this.providers = providers;
-		}
+		this(providers, null, null);
 	}
 
-	@Override
-	public AudioItem apply(MirroringAudioTrack mirroringAudioTrack) {
-		AudioItem track = AudioReference.NO_TRACK;
+	/**
+	 * The providers are compiled once, unusable providers are dropped with a warning.
+	 *
+	 * @param providerTimeout       the maximum time a single provider may take before the next one is tried or null to wait indefinitely
+	 * @param circuitBreakerFactory creates the circuit breaker of each provider or null to disable circuit breaking
+	 */
+	public DefaultMirroringAudioTrackResolver(String[] providers, @Nullable Duration providerTimeout, @Nullable Supplier<CircuitBreaker> circuitBreakerFactory) {
+		if (providers == null || providers.length == 0) {
+			providers = DEFAULT_PROVIDERS;
+		}
+		var compiled = new ArrayList<MirroringProvider>(providers.length);
 		for (var provider : providers) {
 			if (provider.startsWith(SpotifySourceManager.SEARCH_PREFIX)) {
 				log.warn("Can not use spotify search as search provider!");
@@ -36,28 +60,108 @@ public class DefaultMirroringAudioTrackResolver implements MirroringAudioTrackRe
 				continue;
 			}
 
-			if (provider.contains(MirroringAudioSourceManager.ISRC_PATTERN)) {
-				if (mirroringAudioTrack.getInfo().isrc != null && !mirroringAudioTrack.getInfo().isrc.isEmpty()) {
-					provider = provider.replace(MirroringAudioSourceManager.ISRC_PATTERN, mirroringAudioTrack.getInfo().isrc);
-				} else {
-					log.debug("Ignoring identifier \"{}\" because this track does not have an ISRC!", provider);
-					continue;
-				}
-			}
+			compiled.add(new MirroringProvider(provider, providerTimeout, circuitBreakerFactory == null ? null : circuitBreakerFactory.get()));
+		}
+		this.providers = Collections.unmodifiableList(compiled);
+	}
+
+	public List<MirroringProvider> getProviders() {
+		return this.providers;
+	}
+
+	/**
+	 * Enables racing of the providers. Each provider is started once the previous one missed or after the hedge delay, whichever comes first.
+	 * The result of the highest priority provider which found something is used and all other providers are cancelled.
+	 *
+	 * @param hedgeDelay the delay between starting two providers, {@link Duration#ZERO} starts all providers at once and null disables racing
+	 */
+	public void setHedgeDelay(@Nullable Duration hedgeDelay) {
+		this.hedgeDelay = hedgeDelay;
+	}
+
+	@Nullable
+	public Duration getHedgeDelay() {
+		return this.hedgeDelay;
+	}
 
-			provider = provider.replace(MirroringAudioSourceManager.QUERY_PATTERN, getTrackTitle(mirroringAudioTrack));
-			try {
-				track = mirroringAudioTrack.loadItem(provider);
+	@Override
+	public CompletableFuture<AudioItem> applyAsync(MirroringAudioTrack mirroringAudioTrack) {
+		var title = getTrackTitle(mirroringAudioTrack);
+		var attempts = new ArrayList<Attempt>(this.providers.size());
+		for (var provider : this.providers) {
+			var query = provider.buildQuery(mirroringAudioTrack, title);
+			if (query == null) {
+				log.debug("Ignoring identifier \"{}\" because this track does not have an ISRC!", provider);
+				continue;
 			}
-			catch (Exception e) {
-				log.error("Failed to load track from provider \"{}\"!", provider, e);
+			attempts.add(new Attempt(mirroringAudioTrack, provider, query));
+		}
+		return race(attempts, this.hedgeDelay);
+	}
+
+	/**
+	 * Without a hedge delay each provider is only started once the previous one missed.
+	 */
+	private static Resolution race(List<Attempt> attempts, @Nullable Duration hedgeDelay) {
+		var resolution = new Resolution();
+		if (attempts.isEmpty()) {
+			resolution.complete(AudioReference.NO_TRACK);
+			return resolution;
+		}
+
+		attempts.get(0).start();
+		for (var i = 1; i < attempts.size(); i++) {
+			var attempt = attempts.get(i);
+			// start as soon as the previous provider missed
+			attempts.get(i - 1).result.thenAccept(item -> {
+				if (item == AudioReference.NO_TRACK) {
+					attempt.start();
+				}
+			});
+			// or once the hedge delay is over
+			if (hedgeDelay == null) {
+				continue;
 			}
-			if (track != AudioReference.NO_TRACK) {
-				break;
+			if (hedgeDelay.isZero()) {
+				attempt.start();
+			} else {
+				CompletableFuture.delayedExecutor(hedgeDelay.toMillis() * i, TimeUnit.MILLISECONDS).execute(attempt::start);
 			}
 		}
 
-		return track;
+		// walk the attempts in priority order, a lower priority result is only used once all higher priority providers missed
+		var result = attempts.get(0).result;
+		for (var i = 1; i < attempts.size(); i++) {
+			var attempt = attempts.get(i);
+			result = result.thenCompose(item -> item != AudioReference.NO_TRACK ? CompletableFuture.completedFuture(item) : attempt.result);
+		}
+		var finalResult = result;
+		finalResult.whenComplete((item, e) -> {
+			for (var attempt : attempts) {
+				attempt.result.cancel(true);
+			}
+			if (e != null) {
+				resolution.completeExceptionally(e);
+				return;
+			}
+			// a miss is only confirmed if every provider actually answered, so failing or skipped providers don't end up in the negative cache
+			if (item == AudioReference.NO_TRACK) {
+				for (var attempt : attempts) {
+					if (attempt.failure != null) {
+						resolution.missConfirmed = false;
+						break;
+					}
+				}
+			}
+			resolution.complete(item);
+		});
+		// cancelling or timing out the resolution cancels all providers
+		resolution.whenComplete((item, e) -> {
+			if (e != null) {
+				finalResult.cancel(true);
+			}
+		});
+		return resolution;
 	}
 
 	public String getTrackTitle(MirroringAudioTrack mirroringAudioTrack) {
@@ -68,4 +172,81 @@ public class DefaultMirroringAudioTrackResolver implements MirroringAudioTrackRe
 		return query;
 	}
 
+	/**
+	 * The future returned by {@link #applyAsync(MirroringAudioTrack)}. It completes with {@link AudioReference#NO_TRACK} if no provider found anything and
+	 * {@link #isMissConfirmed()} tells whether that miss may be cached.
+	 */
+	public static final class Resolution extends CompletableFuture<AudioItem> {
+
+		private volatile boolean missConfirmed = true;
+
+		/**
+		 * @return false if at least one provider failed or was skipped by its circuit breaker, so the track might still have a mirror
+		 */
+		public boolean isMissConfirmed() {
+			return this.missConfirmed;
+		}
+
+	}
+
+	private static class Attempt {
+
+		private final MirroringAudioTrack mirroringAudioTrack;
+		private final MirroringProvider provider;
+		private final String query;
+		private final CompletableFuture<AudioItem> result = new CompletableFuture<>();
+		private final AtomicBoolean started = new AtomicBoolean();
+		private volatile Throwable failure;
+
+		private Attempt(MirroringAudioTrack mirroringAudioTrack, MirroringProvider provider, String query) {
+			this.mirroringAudioTrack = mirroringAudioTrack;
+			this.provider = provider;
+			this.query = query;
+		}
+
+		private void start() {
+			if (this.result.isDone() || !this.started.compareAndSet(false, true)) {
+				return;
+			}
+
+			var permit = this.provider.tryAcquire();
+			if (permit == CircuitBreaker.NOT_PERMITTED) {
+				log.debug("Skipping provider \"{}\" because its circuit breaker is open", this.provider);
+				this.failure = new FriendlyException("Mirror provider \"" + this.provider + "\" is unavailable", FriendlyException.Severity.SUSPICIOUS, null);
+				this.result.complete(AudioReference.NO_TRACK);
+				return;
+			}
+
+			var load = this.mirroringAudioTrack.loadItemAsync(this.query);
+			var timeout = this.provider.getTimeout();
+			if (timeout != null) {
+				load = load.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+			}
+			// cancelling the attempt also cancels the load
+			var finalLoad = load;
+			this.result.whenComplete((item, e) -> finalLoad.cancel(true));
+			load.whenComplete((item, e) -> {
+				if (e != null) {
+					if (e instanceof CancellationException || this.result.isDone()) {
+						this.provider.onIgnored(permit);
+					} else {
+						this.provider.onFailure(permit);
+						if (e instanceof TimeoutException) {
+							log.warn("Provider \"{}\" timed out after {}", this.provider, timeout);
+						} else {
+							log.error("Failed to load track from provider \"{}\"!", this.query, e);
+						}
+						this.failure = e;
+					}
+					this.result.complete(AudioReference.NO_TRACK);
+					return;
+				}
+				// a miss still means the provider is healthy
+				this.provider.onSuccess(permit);
+				this.result.complete(item == null ? AudioReference.NO_TRACK : item);
+			});
+		}
+
+	}
+
 }
@@ -2,16 +2,29 @@ package com.github.topi314.lavasrc.mirror;
 
 import com.github.topi314.lavasrc.ExtendedAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.DaemonThreadFactory;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpConfigurable;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterfaceManager;
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -20,8 +33,23 @@ public abstract class MirroringAudioSourceManager extends ExtendedAudioSourceMan
 	public static final String ISRC_PATTERN = "%ISRC%";
 	public static final String QUERY_PATTERN = "%QUERY%";
 	private static final Logger log = LoggerFactory.getLogger(MirroringAudioSourceManager.class);
+	// resolutions a track is waiting for over all source managers, background preloads yield to them
+	private static final AtomicInteger FOREGROUND_RESOLUTIONS = new AtomicInteger();
 	protected final Function<Void, AudioPlayerManager> audioPlayerManager;
 	protected final MirroringAudioTrackResolver resolver;
+	protected final AsyncMirroringAudioTrackResolver asyncResolver;
+	// only used to run synchronous resolvers
+	protected final ExecutorService resolverExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("mirror-resolver"));
+	@Nullable
+	protected MirroringAudioTrackCache mirrorCache;
+	@Nullable
+	protected MirroringAudioTrackIndex mirrorIndex;
+	@Nullable
+	protected Duration mirrorTimeout;
+	@Nullable
+	protected MirroringAudioTrackPreloader mirrorPreloader;
+	// resolutions currently in flight, keyed by the identifier key of the mirrored track
+	private final ConcurrentHashMap<String, PendingMirror> pendingMirrors = new ConcurrentHashMap<>();
 
 	protected final HttpInterfaceManager httpInterfaceManager = HttpClientTools.createDefaultThreadLocalManager();
 
@@ -32,6 +60,7 @@ public abstract class MirroringAudioSourceManager extends ExtendedAudioSourceMan
 	protected MirroringAudioSourceManager(Function<Void, AudioPlayerManager> audioPlayerManager, MirroringAudioTrackResolver resolver) {
 		this.audioPlayerManager = audioPlayerManager;
 		this.resolver = resolver;
+		this.asyncResolver = AsyncMirroringAudioTrackResolver.of(resolver, this.resolverExecutor);
 	}
 
 	@Override
@@ -50,6 +79,7 @@ public abstract class MirroringAudioSourceManager extends ExtendedAudioSourceMan
 
 	@Override
 	public void shutdown() {
+		this.resolverExecutor.shutdownNow();
 		try {
 			this.httpInterfaceManager.close();
 		} catch (IOException e) {
@@ -65,4 +95,245 @@ public abstract class MirroringAudioSourceManager extends ExtendedAudioSourceMan
 		return this.resolver;
 	}
 
+	public AsyncMirroringAudioTrackResolver getAsyncResolver() {
+		return this.asyncResolver;
+	}
+
+	@Nullable
+	public MirroringAudioTrackPreloader getMirrorPreloader() {
+		return this.mirrorPreloader;
+	}
+
+	/**
+	 * Enables preloading the mirrors of loaded playlists. This only has an effect if a mirror cache is set.
+	 */
+	public void setMirrorPreloader(@Nullable MirroringAudioTrackPreloader mirrorPreloader) {
+		this.mirrorPreloader = mirrorPreloader;
+	}
+
+	protected void preloadMirrors(List<AudioTrack> tracks) {
+		if (this.mirrorPreloader != null && this.mirrorCache != null) {
+			this.mirrorPreloader.preload(tracks);
+		}
+	}
+
+	@Nullable
+	public Duration getMirrorTimeout() {
+		return this.mirrorTimeout;
+	}
+
+	/**
+	 * @param mirrorTimeout the maximum time a single mirror resolution may take or null to wait indefinitely
+	 */
+	public void setMirrorTimeout(@Nullable Duration mirrorTimeout) {
+		this.mirrorTimeout = mirrorTimeout;
+	}
+
+	@Nullable
+	public MirroringAudioTrackCache getMirrorCache() {
+		return this.mirrorCache;
+	}
+
+	public void setMirrorCache(@Nullable MirroringAudioTrackCache mirrorCache) {
+		this.mirrorCache = mirrorCache;
+	}
+
+	@Nullable
+	public MirroringAudioTrackIndex getMirrorIndex() {
+		return this.mirrorIndex;
+	}
+
+	/**
+	 * Enables persisting resolved mirrors, so they can be reused after a restart. The index is not closed by this source manager.
+	 */
+	public void setMirrorIndex(@Nullable MirroringAudioTrackIndex mirrorIndex) {
+		this.mirrorIndex = mirrorIndex;
+	}
+
+	/**
+	 * Resolves the mirror for the given track, consulting the mirror cache and index before running the resolver.
+	 * Concurrent resolutions of the same track share a single resolver run, unless the track has no unique identifier.
+	 *
+	 * @return a future completing with the track to play instead of the given one or null if no mirror could be found
+	 */
+	public CompletableFuture<AudioTrack> resolveMirror(MirroringAudioTrack track) {
+		return this.resolveMirror(track, false);
+	}
+
+	/**
+	 * @param background whether nothing is waiting for the mirror yet, background resolutions are not counted by {@link #getForegroundResolutionCount()}
+	 * @see #resolveMirror(MirroringAudioTrack)
+	 */
+	public CompletableFuture<AudioTrack> resolveMirror(MirroringAudioTrack track, boolean background) {
+		if (this.mirrorCache != null) {
+			var cached = this.mirrorCache.get(track);
+			if (cached != null) {
+				log.debug("Using cached mirror for {} {}", track.getIdentifier(), cached.getInfo().uri);
+				return CompletableFuture.completedFuture(cached);
+			}
+		}
+		if (this.mirrorIndex != null) {
+			var indexed = this.mirrorIndex.get(track, this.getAudioPlayerManager());
+			if (indexed != null) {
+				log.debug("Using indexed mirror for {} {}", track.getIdentifier(), indexed.getInfo().uri);
+				if (this.mirrorCache != null) {
+					this.mirrorCache.put(track, indexed);
+				}
+				return CompletableFuture.completedFuture(indexed);
+			}
+		}
+		if (this.mirrorCache != null && this.mirrorCache.isMiss(track, this.resolver)) {
+			log.debug("Skipping mirror resolution for {}, no mirror was found recently", track.getIdentifier());
+			return CompletableFuture.completedFuture(null);
+		}
+
+		if (background) {
+			return this.resolveMirrorShared(track);
+		}
+		FOREGROUND_RESOLUTIONS.incrementAndGet();
+		var future = this.resolveMirrorShared(track);
+		future.whenComplete((mirror, e) -> FOREGROUND_RESOLUTIONS.decrementAndGet());
+		return future;
+	}
+
+	private CompletableFuture<AudioTrack> resolveMirrorShared(MirroringAudioTrack track) {
+		// tracks sharing a placeholder identifier are different tracks, so they must not share a resolution
+		if (!track.hasUniqueIdentifier()) {
+			return this.resolveMirrorUncached(track);
+		}
+
+		var key = MirroringAudioTrackCache.getIdentifierKey(track);
+		PendingMirror pending;
+		var started = false;
+		while (true) {
+			pending = this.pendingMirrors.get(key);
+			if (pending == null) {
+				var created = new PendingMirror();
+				pending = this.pendingMirrors.putIfAbsent(key, created);
+				if (pending == null) {
+					pending = created;
+					started = true;
+				}
+			}
+			if (pending.join()) {
+				break;
+			}
+			// every caller of this resolution gave up and it is being cancelled, start a new one
+			this.pendingMirrors.remove(key, pending);
+		}
+
+		var joined = pending;
+		if (started) {
+			var resolution = this.resolveMirrorUncached(track);
+			joined.resolution = resolution;
+			// only complete the shared future after it got removed, so late callers will hit the cache instead
+			resolution.whenComplete((mirror, e) -> {
+				this.pendingMirrors.remove(key, joined);
+				if (e != null) {
+					joined.shared.completeExceptionally(e);
+				} else {
+					joined.shared.complete(mirror);
+				}
+			});
+		} else {
+			log.debug("Joining pending mirror resolution for {}", key);
+		}
+
+		// every caller gets its own instance, cancelling it only cancels the resolution once no other caller is waiting for it
+		var result = joined.shared.thenApply(mirror -> mirror == null ? null : mirror.makeClone());
+		result.whenComplete((mirror, e) -> {
+			if (e instanceof CancellationException) {
+				joined.leave();
+			}
+		});
+		return result;
+	}
+
+	private CompletableFuture<AudioTrack> resolveMirrorUncached(MirroringAudioTrack track) {
+		var timeout = this.mirrorTimeout;
+		var future = timeout == null ? this.asyncResolver.applyAsync(track) : this.asyncResolver.applyAsync(track, timeout);
+		var mirrorFuture = future.thenApply(item -> {
+			var mirror = getFirstTrack(item);
+			if (mirror != null && this.mirrorIndex != null) {
+				this.mirrorIndex.put(track, mirror, this.getAudioPlayerManager());
+			}
+			if (this.mirrorCache != null) {
+				if (mirror != null) {
+					this.mirrorCache.put(track, mirror);
+				} else if (!(future instanceof DefaultMirroringAudioTrackResolver.Resolution) || ((DefaultMirroringAudioTrackResolver.Resolution) future).isMissConfirmed()) {
+					// orTimeout returns the same future, so the resolution of the default resolver is still recognized
+					this.mirrorCache.putMiss(track, this.resolver);
+				}
+			}
+			return mirror;
+		});
+		// cancelling a dependent future does not cancel the future it depends on, so pass it on to the resolver
+		mirrorFuture.whenComplete((mirror, e) -> {
+			if (e instanceof CancellationException) {
+				future.cancel(true);
+			}
+		});
+		return mirrorFuture;
+	}
+
+	/**
+	 * @return the number of mirror resolutions currently in flight
+	 */
+	public int getPendingMirrorCount() {
+		return this.pendingMirrors.size();
+	}
+
+	/**
+	 * @return the number of mirror resolutions tracks are currently waiting for, over all source managers
+	 */
+	public static int getForegroundResolutionCount() {
+		return FOREGROUND_RESOLUTIONS.get();
+	}
+
+	private static final class PendingMirror {
+
+		private final CompletableFuture<AudioTrack> shared = new CompletableFuture<>();
+		private volatile CompletableFuture<AudioTrack> resolution;
+		// guarded by this
+		private int waiters;
+		private boolean abandoned;
+
+		/**
+		 * @return false if every previous caller already cancelled and the resolution is being cancelled
+		 */
+		private synchronized boolean join() {
+			if (this.abandoned) {
+				return false;
+			}
+			this.waiters++;
+			return true;
+		}
+
+		private void leave() {
+			synchronized (this) {
+				if (--this.waiters > 0 || this.shared.isDone()) {
+					return;
+				}
+				this.abandoned = true;
+			}
+			var resolution = this.resolution;
+			if (resolution != null) {
+				resolution.cancel(true);
+			}
+		}
+
+	}
+
+	@Nullable
+	protected static AudioTrack getFirstTrack(@Nullable AudioItem item) {
+		if (item instanceof AudioPlaylist) {
+			var tracks = ((AudioPlaylist) item).getTracks();
+			return tracks.isEmpty() ? null : tracks.get(0);
+		}
+		if (item instanceof AudioTrack) {
+			return (AudioTrack) item;
+		}
+		return null;
+	}
+
 }
@@ -13,6 +13,8 @@ import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 public abstract class MirroringAudioTrack extends ExtendedAudioTrack {
 
@@ -27,6 +29,13 @@ public abstract class MirroringAudioTrack extends ExtendedAudioTrack {
 
 	abstract protected InternalAudioTrack createAudioTrack(AudioTrackInfo trackInfo, SeekableInputStream inputStream);
 
+	/**
+	 * @return whether the identifier of this track identifies it on its own, tracks like local files share a placeholder identifier
+	 */
+	public boolean hasUniqueIdentifier() {
+		return true;
+	}
+
 	@Override
 	public void process(LocalAudioTrackExecutor executor) throws Exception {
 		if (this.isPreview) {
@@ -40,14 +49,22 @@ public abstract class MirroringAudioTrack extends ExtendedAudioTrack {
 			}
 			return;
 		}
-		var track = this.sourceManager.getResolver().apply(this);
-
-		if (track instanceof AudioPlaylist) {
-			var tracks = ((AudioPlaylist) track).getTracks();
-			if (tracks.isEmpty()) {
-				throw new TrackNotFoundException();
+		var future = this.sourceManager.resolveMirror(this);
+		AudioTrack track;
+		try {
+			track = future.get();
+		} catch (InterruptedException e) {
+			// the track got stopped while we were still resolving, this cancels the search unless other tracks wait for the same mirror
+			future.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException) {
+				throw new FriendlyException("Timed out while resolving a mirror for this track", FriendlyException.Severity.COMMON, e.getCause());
+			}
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
 			}
-			track = tracks.get(0);
+			throw e;
 		}
 		if (track instanceof InternalAudioTrack) {
 			var internalTrack = (InternalAudioTrack) track;
@@ -58,14 +75,34 @@ public abstract class MirroringAudioTrack extends ExtendedAudioTrack {
 		throw new TrackNotFoundException();
 	}
 
+	/**
+	 * Resolves the mirror of this track ahead of time. The mirror is only kept if the source manager has a mirror cache or index,
+	 * otherwise only a resolution still in flight when this track gets played is joined.
+	 */
+	@Override
+	public CompletableFuture<Void> prewarm() {
+		if (this.isPreview) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return this.sourceManager.resolveMirror(this).thenApply(mirror -> null);
+	}
+
 	@Override
 	public AudioSourceManager getSourceManager() {
 		return this.sourceManager;
 	}
 
 	public AudioItem loadItem(String query) {
+		return this.loadItemAsync(query).join();
+	}
+
+	/**
+	 * Loads the given query via the {@link com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager} without blocking.
+	 * Cancelling or timing out the returned future also cancels the underlying load.
+	 */
+	public CompletableFuture<AudioItem> loadItemAsync(String query) {
 		var cf = new CompletableFuture<AudioItem>();
-		this.sourceManager.getAudioPlayerManager().loadItem(query, new AudioLoadResultHandler() {
+		var future = this.sourceManager.getAudioPlayerManager().loadItem(query, new AudioLoadResultHandler() {
 
 			@Override
 			public void trackLoaded(AudioTrack track) {
@@ -91,7 +128,13 @@ public abstract class MirroringAudioTrack extends ExtendedAudioTrack {
 				cf.completeExceptionally(exception);
 			}
 		});
-		return cf.join();
+		cf.whenComplete((item, e) -> {
+			// a no-op if the load itself failed
+			if (e != null) {
+				future.cancel(true);
+			}
+		});
+		return cf;
 	}
 
 }
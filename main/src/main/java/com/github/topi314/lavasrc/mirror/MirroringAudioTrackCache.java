@@ -0,0 +1,186 @@
+package com.github.topi314.lavasrc.mirror;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Bounded cache of resolved mirrors. Entries are stored under the source name + identifier of the mirrored track and, if present, under its ISRC,
+ * so the same recording loaded from different sources shares one mirror. Tracks without a unique identifier, like Spotify local files, are stored under their title and author instead.
+ * Tracks for which no mirror could be found are remembered separately for a short time per resolver, so repeated misses cost no requests.
+ */
+public class MirroringAudioTrackCache {
+
+	public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+	public static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ofHours(1);
+	public static final Duration DEFAULT_MISS_EXPIRE_AFTER_WRITE = Duration.ofMinutes(5);
+
+	private final Cache<String, AudioTrack> mirrors;
+	@Nullable
+	private final Cache<MissKey, Boolean> misses;
+
+	public MirroringAudioTrackCache() {
+		this(DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_WRITE);
+	}
+
+	public MirroringAudioTrackCache(long maximumSize, @NotNull Duration expireAfterWrite) {
+		this(maximumSize, expireAfterWrite, DEFAULT_MISS_EXPIRE_AFTER_WRITE);
+	}
+
+	/**
+	 * @param missExpireAfterWrite how long a track without mirror is remembered, {@link Duration#ZERO} disables caching misses
+	 */
+	public MirroringAudioTrackCache(long maximumSize, @NotNull Duration expireAfterWrite, @NotNull Duration missExpireAfterWrite) {
+		this.mirrors = Caffeine.newBuilder()
+			.maximumSize(maximumSize)
+			.expireAfterWrite(expireAfterWrite)
+			.recordStats()
+			.build();
+		if (missExpireAfterWrite.isZero() || missExpireAfterWrite.isNegative()) {
+			this.misses = null;
+		} else {
+			this.misses = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(missExpireAfterWrite)
+				.recordStats()
+				.build();
+		}
+	}
+
+	/**
+	 * @return a fresh clone of the cached mirror for the given track or null if there is none
+	 */
+	@Nullable
+	public AudioTrack get(@NotNull MirroringAudioTrack track) {
+		var mirror = this.mirrors.getIfPresent(getIdentifierKey(track));
+		if (mirror == null) {
+			var isrcKey = getIsrcKey(track);
+			if (isrcKey != null) {
+				mirror = this.mirrors.getIfPresent(isrcKey);
+			}
+		}
+		return mirror == null ? null : mirror.makeClone();
+	}
+
+	public void put(@NotNull MirroringAudioTrack track, @NotNull AudioTrack mirror) {
+		// keep our own instance, the given one is most likely about to be played
+		var clone = mirror.makeClone();
+		this.mirrors.put(getIdentifierKey(track), clone);
+		var isrcKey = getIsrcKey(track);
+		if (isrcKey != null) {
+			this.mirrors.put(isrcKey, clone);
+		}
+	}
+
+	/**
+	 * @return whether the given resolver recently failed to find a mirror for the given track
+	 */
+	public boolean isMiss(@NotNull MirroringAudioTrack track, @NotNull MirroringAudioTrackResolver resolver) {
+		return this.misses != null && this.misses.getIfPresent(new MissKey(resolver, getIdentifierKey(track))) != null;
+	}
+
+	public void putMiss(@NotNull MirroringAudioTrack track, @NotNull MirroringAudioTrackResolver resolver) {
+		if (this.misses != null) {
+			this.misses.put(new MissKey(resolver, getIdentifierKey(track)), Boolean.TRUE);
+		}
+	}
+
+	public void invalidate(@NotNull MirroringAudioTrack track) {
+		var identifierKey = getIdentifierKey(track);
+		this.mirrors.invalidate(identifierKey);
+		var isrcKey = getIsrcKey(track);
+		if (isrcKey != null) {
+			this.mirrors.invalidate(isrcKey);
+		}
+		if (this.misses != null) {
+			this.misses.asMap().keySet().removeIf(key -> key.key.equals(identifierKey));
+		}
+	}
+
+	public void invalidateAll() {
+		this.mirrors.invalidateAll();
+		if (this.misses != null) {
+			this.misses.invalidateAll();
+		}
+	}
+
+	public long size() {
+		return this.mirrors.estimatedSize();
+	}
+
+	@NotNull
+	public CacheStats getStats() {
+		return this.mirrors.stats();
+	}
+
+	public long missSize() {
+		return this.misses == null ? 0 : this.misses.estimatedSize();
+	}
+
+	@NotNull
+	public CacheStats getMissStats() {
+		return this.misses == null ? CacheStats.empty() : this.misses.stats();
+	}
+
+	/**
+	 * @return the source name and identifier of the track or, if its identifier is not unique, the source name, normalized title and author
+	 */
+	@NotNull
+	public static String getIdentifierKey(@NotNull MirroringAudioTrack track) {
+		if (!track.hasUniqueIdentifier()) {
+			var info = track.getInfo();
+			return track.getSourceManager().getSourceName() + ":" + track.getIdentifier() + ":" + normalize(info.title) + "\u0000" + normalize(info.author);
+		}
+		return track.getSourceManager().getSourceName() + ":" + track.getIdentifier();
+	}
+
+	private static String normalize(@Nullable String value) {
+		return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+	}
+
+	@Nullable
+	public static String getIsrcKey(@NotNull MirroringAudioTrack track) {
+		var isrc = track.getInfo().isrc;
+		if (isrc == null || isrc.isEmpty()) {
+			return null;
+		}
+		return "isrc:" + isrc;
+	}
+
+	private static final class MissKey {
+
+		// misses are only valid for the provider chain which produced them
+		private final MirroringAudioTrackResolver resolver;
+		private final String key;
+
+		private MissKey(MirroringAudioTrackResolver resolver, String key) {
+			this.resolver = resolver;
+			this.key = key;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof MissKey)) {
+				return false;
+			}
+			var other = (MissKey) o;
+			return this.resolver == other.resolver && this.key.equals(other.key);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(this.resolver) + this.key.hashCode();
+		}
+
+	}
+
+}
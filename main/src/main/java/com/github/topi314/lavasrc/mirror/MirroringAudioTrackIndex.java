@@ -0,0 +1,483 @@
+package com.github.topi314.lavasrc.mirror;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.DaemonThreadFactory;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent index of resolved mirrors, so they survive restarts.
+ * <p>
+ * The index is an append-only log file. Each record holds the encoded mirror and all keys (see {@link MirroringAudioTrackCache#getIdentifierKey(MirroringAudioTrack)}
+ * and {@link MirroringAudioTrackCache#getIsrcKey(MirroringAudioTrack)}) pointing to it. On startup the log is replayed into an in memory map of key to file position,
+ * so lookups are a hash map access followed by a single positional read. Overwritten, removed and expired records are dropped by periodically rewriting the file.
+ * One index can be shared between multiple {@link MirroringAudioSourceManager}s.
+ * Tracks without a unique identifier, like Spotify local files, are never stored since their title and author are not reliable enough to persist a mirror for.
+ */
+public class MirroringAudioTrackIndex implements Closeable {
+
+	public static final Duration DEFAULT_MAX_AGE = Duration.ofDays(30);
+	public static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofHours(1);
+	private static final Logger log = LoggerFactory.getLogger(MirroringAudioTrackIndex.class);
+	private static final int MAGIC = 0x4C534D49;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = Integer.BYTES * 2;
+	// compact once less than half of the file is still in use
+	private static final double MIN_LIVE_RATIO = 0.5;
+
+	private final Path path;
+	private final long maxAgeMillis;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, Record> records = new HashMap<>();
+	@Nullable
+	private final ScheduledExecutorService compactionExecutor;
+	private FileChannel channel;
+	private long size;
+	private long liveBytes;
+
+	public MirroringAudioTrackIndex(@NotNull Path path) throws IOException {
+		this(path, DEFAULT_MAX_AGE, DEFAULT_COMPACTION_INTERVAL);
+	}
+
+	/**
+	 * Opens or creates the index file and loads all entries.
+	 *
+	 * @param maxAge             how long a mirror is used before it gets resolved again
+	 * @param compactionInterval how often the file is checked for compaction, {@link Duration#ZERO} disables periodic compaction
+	 */
+	public MirroringAudioTrackIndex(@NotNull Path path, @NotNull Duration maxAge, @NotNull Duration compactionInterval) throws IOException {
+		this.path = path;
+		this.maxAgeMillis = maxAge.toMillis();
+		var parent = path.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.load();
+		this.compactIfNeeded();
+
+		if (compactionInterval.isZero() || compactionInterval.isNegative()) {
+			this.compactionExecutor = null;
+		} else {
+			this.compactionExecutor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("mirror-index"));
+			this.compactionExecutor.scheduleWithFixedDelay(() -> {
+				try {
+					this.compactIfNeeded();
+				} catch (Exception e) {
+					log.error("Failed to compact mirror index {}", this.path, e);
+				}
+			}, compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return the stored mirror for the given track or null if there is none or it could not be decoded
+	 */
+	@Nullable
+	public AudioTrack get(@NotNull MirroringAudioTrack track, @NotNull AudioPlayerManager audioPlayerManager) {
+		if (!track.hasUniqueIdentifier()) {
+			return null;
+		}
+		var data = this.read(MirroringAudioTrackCache.getIdentifierKey(track));
+		if (data == null) {
+			var isrcKey = MirroringAudioTrackCache.getIsrcKey(track);
+			if (isrcKey != null) {
+				data = this.read(isrcKey);
+			}
+		}
+		if (data == null) {
+			return null;
+		}
+
+		try {
+			var holder = audioPlayerManager.decodeTrack(new MessageInput(new ByteArrayInputStream(data)));
+			if (holder != null && holder.decodedTrack != null) {
+				return holder.decodedTrack;
+			}
+			log.debug("Dropping indexed mirror for {}, its source is not available", track.getIdentifier());
+		} catch (IOException e) {
+			log.warn("Failed to decode indexed mirror for {}", track.getIdentifier(), e);
+		}
+		this.remove(track);
+		return null;
+	}
+
+	public void put(@NotNull MirroringAudioTrack track, @NotNull AudioTrack mirror, @NotNull AudioPlayerManager audioPlayerManager) {
+		if (!track.hasUniqueIdentifier()) {
+			return;
+		}
+		try {
+			var out = new ByteArrayOutputStream();
+			audioPlayerManager.encodeTrack(new MessageOutput(out), mirror);
+			this.write(getKeys(track), out.toByteArray(), System.currentTimeMillis());
+		} catch (IOException e) {
+			log.warn("Failed to write mirror for {} to the index", track.getIdentifier(), e);
+		}
+	}
+
+	public void remove(@NotNull MirroringAudioTrack track) {
+		if (!track.hasUniqueIdentifier()) {
+			return;
+		}
+		try {
+			this.write(getKeys(track), new byte[0], System.currentTimeMillis());
+		} catch (IOException e) {
+			log.warn("Failed to remove mirror for {} from the index", track.getIdentifier(), e);
+		}
+	}
+
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.records.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the size of the index file in bytes
+	 */
+	public long fileSize() {
+		this.lock.readLock().lock();
+		try {
+			return this.size;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Rewrites the file without overwritten, removed and expired records if less than half of it is still in use.
+	 */
+	public void compactIfNeeded() throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			// entries which only expire are never overwritten, so they have to be dropped here to count as unused
+			this.removeExpired(System.currentTimeMillis());
+			if (this.size > HEADER_SIZE && this.liveBytes < (this.size - HEADER_SIZE) * MIN_LIVE_RATIO) {
+				this.compact();
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	public void compact() throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			var now = System.currentTimeMillis();
+			// records can be shared by multiple keys, collect the keys still pointing to each record
+			var keysByRecord = new IdentityHashMap<Record, List<String>>();
+			for (var entry : this.records.entrySet()) {
+				if (this.isExpired(entry.getValue(), now)) {
+					continue;
+				}
+				keysByRecord.computeIfAbsent(entry.getValue(), record -> new ArrayList<>(2)).add(entry.getKey());
+			}
+
+			var tmpPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+			var newChannel = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			var newRecords = new HashMap<String, Record>(this.records.size());
+			var newSize = writeHeader(newChannel);
+			var newLiveBytes = 0L;
+			try {
+				for (var entry : keysByRecord.entrySet()) {
+					var data = this.readData(entry.getKey());
+					var bytes = encodeRecord(entry.getValue(), data, entry.getKey().writtenAt);
+					writeFully(newChannel, bytes, newSize);
+					var record = new Record(newSize, bytes.length, data.length, entry.getKey().writtenAt, entry.getValue().size());
+					for (var key : entry.getValue()) {
+						newRecords.put(key, record);
+					}
+					newSize += bytes.length;
+					newLiveBytes += bytes.length;
+				}
+				newChannel.force(true);
+				Files.move(tmpPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				newChannel.close();
+				Files.deleteIfExists(tmpPath);
+				throw e;
+			}
+
+			log.debug("Compacted mirror index {} from {} to {} bytes", this.path, this.size, newSize);
+			this.channel.close();
+			this.channel = newChannel;
+			this.records.clear();
+			this.records.putAll(newRecords);
+			this.size = newSize;
+			this.liveBytes = newLiveBytes;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.compactionExecutor != null) {
+			this.compactionExecutor.shutdownNow();
+		}
+		this.lock.writeLock().lock();
+		try {
+			this.channel.force(true);
+			this.channel.close();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Nullable
+	private byte[] read(String key) {
+		this.lock.readLock().lock();
+		try {
+			var record = this.records.get(key);
+			if (record == null || this.isExpired(record, System.currentTimeMillis())) {
+				return null;
+			}
+			return this.readData(record);
+		} catch (IOException e) {
+			log.warn("Failed to read {} from the mirror index", key, e);
+			return null;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	private byte[] readData(Record record) throws IOException {
+		var buffer = ByteBuffer.allocate(record.dataLength);
+		var position = record.dataPosition();
+		while (buffer.hasRemaining()) {
+			var read = this.channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("Unexpected end of mirror index");
+			}
+		}
+		return buffer.array();
+	}
+
+	private void write(List<String> keys, byte[] data, long writtenAt) throws IOException {
+		var bytes = encodeRecord(keys, data, writtenAt);
+		this.lock.writeLock().lock();
+		try {
+			writeFully(this.channel, bytes, this.size);
+			this.apply(keys, new Record(this.size, bytes.length, data.length, writtenAt, 0));
+			this.size += bytes.length;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private void apply(List<String> keys, Record record) {
+		for (var key : keys) {
+			var previous = record.dataLength == 0 ? this.records.remove(key) : this.records.put(key, record);
+			if (previous != null && --previous.references == 0) {
+				this.liveBytes -= previous.length;
+			}
+			if (record.dataLength != 0 && record.references++ == 0) {
+				this.liveBytes += record.length;
+			}
+		}
+	}
+
+	private void load() throws IOException {
+		var fileSize = this.channel.size();
+		if (fileSize < HEADER_SIZE) {
+			this.channel.truncate(0);
+			this.size = writeHeader(this.channel);
+			return;
+		}
+
+		var header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(this.channel, header, 0);
+		if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION) {
+			log.warn("Mirror index {} has an unknown format, starting with an empty index", this.path);
+			this.channel.truncate(0);
+			this.size = writeHeader(this.channel);
+			return;
+		}
+
+		var now = System.currentTimeMillis();
+		var position = (long) HEADER_SIZE;
+		var lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+		while (position + Integer.BYTES <= fileSize) {
+			lengthBuffer.clear();
+			readFully(this.channel, lengthBuffer, position);
+			var bodyLength = lengthBuffer.getInt(0);
+			if (bodyLength <= 0 || position + Integer.BYTES + bodyLength > fileSize) {
+				break;
+			}
+			var body = ByteBuffer.allocate(bodyLength);
+			readFully(this.channel, body, position + Integer.BYTES);
+
+			var crc = new CRC32();
+			crc.update(body.array(), 0, bodyLength - Integer.BYTES);
+			if ((int) crc.getValue() != body.getInt(bodyLength - Integer.BYTES)) {
+				break;
+			}
+
+			var in = new DataInputStream(new ByteArrayInputStream(body.array(), 0, bodyLength - Integer.BYTES));
+			var writtenAt = in.readLong();
+			var keyCount = in.readUnsignedShort();
+			var keys = new ArrayList<String>(keyCount);
+			for (var i = 0; i < keyCount; i++) {
+				keys.add(in.readUTF());
+			}
+			var dataLength = in.readInt();
+			var length = Integer.BYTES + bodyLength;
+			if (dataLength == 0 || !this.isExpired(writtenAt, now)) {
+				this.apply(keys, new Record(position, length, dataLength, writtenAt, 0));
+			} else {
+				// expired records behave like removals, so older records of the same keys are not revived
+				this.apply(keys, new Record(position, length, 0, writtenAt, 0));
+			}
+			position += length;
+		}
+
+		if (position < fileSize) {
+			// most likely a record which was only partially written before a crash
+			log.warn("Mirror index {} is corrupted after {} bytes, dropping the remaining {} bytes", this.path, position, fileSize - position);
+			this.channel.truncate(position);
+		}
+		this.size = position;
+		log.info("Loaded {} mirrors from index {}", this.records.size(), this.path);
+	}
+
+	// guarded by the write lock
+	private void removeExpired(long now) {
+		var iterator = this.records.values().iterator();
+		while (iterator.hasNext()) {
+			var record = iterator.next();
+			if (!this.isExpired(record, now)) {
+				continue;
+			}
+			iterator.remove();
+			if (--record.references == 0) {
+				this.liveBytes -= record.length;
+			}
+		}
+	}
+
+	private boolean isExpired(Record record, long now) {
+		return this.isExpired(record.writtenAt, now);
+	}
+
+	private boolean isExpired(long writtenAt, long now) {
+		return this.maxAgeMillis > 0 && now - writtenAt > this.maxAgeMillis;
+	}
+
+	private static List<String> getKeys(MirroringAudioTrack track) {
+		var identifierKey = MirroringAudioTrackCache.getIdentifierKey(track);
+		var isrcKey = MirroringAudioTrackCache.getIsrcKey(track);
+		if (isrcKey == null) {
+			return Collections.singletonList(identifierKey);
+		}
+		return List.of(identifierKey, isrcKey);
+	}
+
+	/**
+	 * A record consists of its length, the write time, the keys, the data and a checksum of everything but the length.
+	 */
+	private static byte[] encodeRecord(List<String> keys, byte[] data, long writtenAt) throws IOException {
+		var body = new ByteArrayOutputStream(data.length + 64);
+		var out = new DataOutputStream(body);
+		out.writeLong(writtenAt);
+		out.writeShort(keys.size());
+		for (var key : keys) {
+			out.writeUTF(key);
+		}
+		out.writeInt(data.length);
+		out.write(data);
+		out.flush();
+
+		var crc = new CRC32();
+		crc.update(body.toByteArray());
+
+		var record = new ByteArrayOutputStream(Integer.BYTES + body.size() + Integer.BYTES);
+		var recordOut = new DataOutputStream(record);
+		recordOut.writeInt(body.size() + Integer.BYTES);
+		body.writeTo(recordOut);
+		recordOut.writeInt((int) crc.getValue());
+		recordOut.flush();
+		return record.toByteArray();
+	}
+
+	private static long writeHeader(FileChannel channel) throws IOException {
+		var header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).flip();
+		writeFully(channel, header.array(), 0);
+		return HEADER_SIZE;
+	}
+
+	private static void writeFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+		var buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		var start = buffer.position();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position() - start) < 0) {
+				throw new IOException("Unexpected end of mirror index");
+			}
+		}
+	}
+
+	private static final class Record {
+
+		private final long position;
+		private final int length;
+		private final int dataLength;
+		private final long writtenAt;
+		// the number of keys pointing to this record
+		private int references;
+
+		private Record(long position, int length, int dataLength, long writtenAt, int references) {
+			this.position = position;
+			this.length = length;
+			this.dataLength = dataLength;
+			this.writtenAt = writtenAt;
+			this.references = references;
+		}
+
+		private long dataPosition() {
+			// the data is always at the end of the record, right before the checksum
+			return this.position + this.length - Integer.BYTES - this.dataLength;
+		}
+
+	}
+
+}
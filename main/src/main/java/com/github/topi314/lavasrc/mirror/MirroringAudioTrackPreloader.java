@@ -0,0 +1,127 @@
+package com.github.topi314.lavasrc.mirror;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Resolves the mirrors of the first tracks of loaded playlists in the background, so they are already in the mirror cache once they get played.
+ * Mirror searches run on the loader threads of the {@link com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager}, so preloads are only started
+ * while no track is waiting for its mirror. One preloader can be shared between multiple {@link MirroringAudioSourceManager}s and does nothing until {@link #start()} is called.
+ */
+public class MirroringAudioTrackPreloader {
+
+	public static final int DEFAULT_CONCURRENCY = 2;
+	public static final int DEFAULT_DEPTH = 10;
+	public static final int DEFAULT_BUDGET = 500;
+	private static final Logger log = LoggerFactory.getLogger(MirroringAudioTrackPreloader.class);
+	// how often the preloader checks whether tracks are still waiting for their mirror
+	private static final long YIELD_MILLIS = 100;
+
+	private final int depth;
+	private final Semaphore permits;
+	private final BlockingQueue<MirroringAudioTrack> queue;
+	private Thread thread;
+	private boolean shutdown;
+
+	public MirroringAudioTrackPreloader() {
+		this(DEFAULT_CONCURRENCY, DEFAULT_DEPTH, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * @param concurrency the maximum number of mirrors resolved at the same time
+	 * @param depth       the number of tracks per playlist to resolve
+	 * @param budget      the maximum number of tracks waiting to be resolved, tracks beyond this are not preloaded
+	 */
+	public MirroringAudioTrackPreloader(int concurrency, int depth, int budget) {
+		if (concurrency < 1 || depth < 1 || budget < 1) {
+			throw new IllegalArgumentException("Concurrency, depth and budget must be greater than 0");
+		}
+		this.depth = depth;
+		this.permits = new Semaphore(concurrency);
+		this.queue = new LinkedBlockingQueue<>(budget);
+	}
+
+	/**
+	 * Starts resolving queued tracks. Calling this more than once has no effect.
+	 *
+	 * @return this preloader
+	 */
+	public synchronized MirroringAudioTrackPreloader start() {
+		if (this.thread == null && !this.shutdown) {
+			this.thread = new Thread(this::run, "lavasrc-mirror-preloader");
+			this.thread.setDaemon(true);
+			this.thread.setPriority(Thread.MIN_PRIORITY);
+			this.thread.start();
+		}
+		return this;
+	}
+
+	/**
+	 * Queues the first tracks of the given list for resolution. Tracks which are not mirrored, previews or tracks of a source without mirror cache are skipped.
+	 */
+	public void preload(List<AudioTrack> tracks) {
+		var queued = 0;
+		for (var track : tracks) {
+			if (queued >= this.depth) {
+				break;
+			}
+			if (!(track instanceof MirroringAudioTrack)) {
+				continue;
+			}
+			var mirroringTrack = (MirroringAudioTrack) track;
+			if (mirroringTrack.isPreview() || ((MirroringAudioSourceManager) mirroringTrack.getSourceManager()).getMirrorCache() == null) {
+				continue;
+			}
+			if (!this.queue.offer(mirroringTrack)) {
+				log.debug("Mirror preload budget exhausted, skipping remaining tracks");
+				return;
+			}
+			queued++;
+		}
+	}
+
+	public int getQueueSize() {
+		return this.queue.size();
+	}
+
+	public synchronized void shutdown() {
+		this.shutdown = true;
+		if (this.thread != null) {
+			this.thread.interrupt();
+		}
+		this.queue.clear();
+	}
+
+	private void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				var track = this.queue.take();
+				this.permits.acquire();
+				// the loader threads are shared with user loads, so wait until nothing is waiting for a mirror anymore
+				while (MirroringAudioSourceManager.getForegroundResolutionCount() > 0) {
+					Thread.sleep(YIELD_MILLIS);
+				}
+				try {
+					((MirroringAudioSourceManager) track.getSourceManager()).resolveMirror(track, true).whenComplete((mirror, e) -> {
+						this.permits.release();
+						if (e != null) {
+							log.debug("Failed to preload mirror for {}", track.getIdentifier(), e);
+						}
+					});
+				} catch (RuntimeException e) {
+					this.permits.release();
+					log.debug("Failed to preload mirror for {}", track.getIdentifier(), e);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
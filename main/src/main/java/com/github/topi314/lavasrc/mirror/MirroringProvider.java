@@ -0,0 +1,139 @@
+package com.github.topi314.lavasrc.mirror;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compiled provider template like {@code ytsearch:"%ISRC%"}. The template is split into its literal and placeholder parts once,
+ * so building the query for a track is a single pass without any string searching.
+ * Each provider has its own timeout and {@link CircuitBreaker}, so a degraded provider can be skipped without affecting the others.
+ */
+public class MirroringProvider {
+
+	private static final Object ISRC = new Object();
+	private static final Object QUERY = new Object();
+
+	private final String template;
+	// either literal strings, ISRC or QUERY
+	private final Object[] parts;
+	private final boolean requiresIsrc;
+	private final int literalLength;
+	@Nullable
+	private final Duration timeout;
+	@Nullable
+	private final CircuitBreaker circuitBreaker;
+
+	/**
+	 * @param timeout        the maximum time a single load of this provider may take or null to wait indefinitely
+	 * @param circuitBreaker the circuit breaker of this provider or null to always use it
+	 */
+	public MirroringProvider(@NotNull String template, @Nullable Duration timeout, @Nullable CircuitBreaker circuitBreaker) {
+		this.template = template;
+		this.timeout = timeout;
+		this.circuitBreaker = circuitBreaker;
+
+		var parts = new ArrayList<>();
+		var requiresIsrc = false;
+		var literalLength = 0;
+		var start = 0;
+		while (start < template.length()) {
+			var isrcIndex = template.indexOf(MirroringAudioSourceManager.ISRC_PATTERN, start);
+			var queryIndex = template.indexOf(MirroringAudioSourceManager.QUERY_PATTERN, start);
+			if (isrcIndex == -1 && queryIndex == -1) {
+				break;
+			}
+			var isIsrc = queryIndex == -1 || (isrcIndex != -1 && isrcIndex < queryIndex);
+			var index = isIsrc ? isrcIndex : queryIndex;
+			if (index > start) {
+				parts.add(template.substring(start, index));
+				literalLength += index - start;
+			}
+			parts.add(isIsrc ? ISRC : QUERY);
+			requiresIsrc |= isIsrc;
+			start = index + (isIsrc ? MirroringAudioSourceManager.ISRC_PATTERN : MirroringAudioSourceManager.QUERY_PATTERN).length();
+		}
+		if (start < template.length()) {
+			parts.add(template.substring(start));
+			literalLength += template.length() - start;
+		}
+		this.parts = parts.toArray();
+		this.requiresIsrc = requiresIsrc;
+		this.literalLength = literalLength;
+	}
+
+	/**
+	 * @return the query for the given track or null if this provider needs an ISRC and the track has none
+	 */
+	@Nullable
+	public String buildQuery(@NotNull MirroringAudioTrack track, @NotNull String title) {
+		var isrc = track.getInfo().isrc;
+		if (this.requiresIsrc && (isrc == null || isrc.isEmpty())) {
+			return null;
+		}
+		var query = new StringBuilder(this.literalLength + title.length());
+		for (var part : this.parts) {
+			if (part == ISRC) {
+				query.append(isrc);
+			} else if (part == QUERY) {
+				query.append(title);
+			} else {
+				query.append((String) part);
+			}
+		}
+		return query.toString();
+	}
+
+	public boolean requiresIsrc() {
+		return this.requiresIsrc;
+	}
+
+	@NotNull
+	public String getTemplate() {
+		return this.template;
+	}
+
+	@Nullable
+	public Duration getTimeout() {
+		return this.timeout;
+	}
+
+	@Nullable
+	public CircuitBreaker getCircuitBreaker() {
+		return this.circuitBreaker;
+	}
+
+	/**
+	 * @return the permit of the call or {@link CircuitBreaker#NOT_PERMITTED} if this provider may not be used right now. Every permitted call must be reported back with its permit
+	 */
+	public long tryAcquire() {
+		return this.circuitBreaker == null ? 0 : this.circuitBreaker.tryAcquire();
+	}
+
+	public void onSuccess(long permit) {
+		if (this.circuitBreaker != null) {
+			this.circuitBreaker.onSuccess(permit);
+		}
+	}
+
+	public void onFailure(long permit) {
+		if (this.circuitBreaker != null) {
+			this.circuitBreaker.onFailure(permit);
+		}
+	}
+
+	public void onIgnored(long permit) {
+		if (this.circuitBreaker != null) {
+			this.circuitBreaker.onIgnored(permit);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.template;
+	}
+
+}
@@ -1,11 +1,12 @@
 package com.github.topi314.lavasrc.spotify;
 
-import lombok.Getter;
+import com.github.topi314.lavasrc.TokenProvider;
 import org.apache.hc.core5.http.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.requests.IRequest;
 import se.michaelthelin.spotify.requests.authorization.client_credentials.ClientCredentialsRequest;
 
 import java.io.IOException;
@@ -21,8 +22,8 @@ public class SpotifyApiAccessor {
 	private final String clientId;
 	private final String clientSecret;
 
-	private String accessToken;
-	private Instant expires;
+	private final TokenProvider<String> accessToken;
+	private final SpotifyRequestScheduler requestScheduler = new SpotifyRequestScheduler();
 
 	public SpotifyApiAccessor(String clientId, String clientSecret) {
 		this.clientId = clientId;
@@ -38,35 +39,24 @@ public class SpotifyApiAccessor {
 			.build();
 
 		clientCredentialsRequest = spotifyApi.clientCredentials().build();
+		accessToken = new TokenProvider<>("spotify access", this::requestAccessToken);
 	}
 
 	public String getAccessToken() {
-		if (accessToken == null || expires == null || expires.isBefore(Instant.now())) {
-			synchronized (this) {
-				if (accessToken == null || expires == null || expires.isBefore(Instant.now())) {
-					refreshAccessToken();
-				}
-			}
-		}
-
-		return accessToken;
-	}
-
-	private void refreshAccessToken() {
-		if(!hasValidCredentials()) {
-			throw new IllegalArgumentException("You must provide a valid client id and client secret");
-		}
-
 		try {
-			var clientCredentials = clientCredentialsRequest.execute();
-			accessToken  = clientCredentials.getAccessToken();
-			spotifyApi.setAccessToken(accessToken);
-			expires = Instant.now().plusSeconds(clientCredentials.getExpiresIn());
-		} catch (IOException | SpotifyWebApiException | ParseException e) {
+			return accessToken.get();
+		} catch (IOException e) {
 			throw new RuntimeException("Access token refreshing failed", e);
 		}
 	}
 
+	private TokenProvider.Token<String> requestAccessToken() throws Exception {
+		var clientCredentials = clientCredentialsRequest.execute();
+		// requests built from now on use the new token
+		spotifyApi.setAccessToken(clientCredentials.getAccessToken());
+		return new TokenProvider.Token<>(clientCredentials.getAccessToken(), Instant.now().plusSeconds(clientCredentials.getExpiresIn()));
+	}
+
 	private boolean hasValidCredentials() {
 		return clientId != null && !clientId.isEmpty() && clientSecret != null && !clientSecret.isEmpty();
 	}
@@ -77,4 +67,26 @@ public class SpotifyApiAccessor {
 
 		return spotifyApi;
 	}
+
+	/**
+	 * Executes the given request through the {@link SpotifyRequestScheduler}, so rate limits delay it instead of failing it.
+	 */
+	public <T> T execute(IRequest<T> request) throws IOException, SpotifyWebApiException, ParseException {
+		return requestScheduler.execute(request);
+	}
+
+	/**
+	 * Executes the given call through the {@link SpotifyRequestScheduler}, the call must send a single request to the Spotify Web API.
+	 */
+	public <T> T execute(SpotifyRequestScheduler.Call<T> call) throws IOException, SpotifyWebApiException, ParseException {
+		return requestScheduler.execute(call);
+	}
+
+	public SpotifyRequestScheduler getRequestScheduler() {
+		return requestScheduler;
+	}
+
+	public void close() {
+		accessToken.close();
+	}
 }
@@ -2,13 +2,59 @@ package com.github.topi314.lavasrc.spotify;
 
 import com.github.topi314.lavasrc.ExtendedAudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class SpotifyAudioPlaylist extends ExtendedAudioPlaylist {
 
+	@NotNull
+	protected final CompletableFuture<List<AudioTrack>> remainingTracks;
+
 	public SpotifyAudioPlaylist(String name, List<AudioTrack> tracks, ExtendedAudioPlaylist.Type type, String url, String artworkURL, String author, Integer totalTracks) {
+		this(name, tracks, type, url, artworkURL, author, totalTracks, null);
+	}
+
+	/**
+	 * @param remainingTracks the tracks which are still loading or null if the given tracks are all tracks of the playlist
+	 */
+	public SpotifyAudioPlaylist(String name, List<AudioTrack> tracks, ExtendedAudioPlaylist.Type type, String url, String artworkURL, String author, Integer totalTracks, @Nullable CompletableFuture<List<AudioTrack>> remainingTracks) {
 		super(name, tracks, type, url, artworkURL, author, totalTracks);
+		this.remainingTracks = remainingTracks == null ? CompletableFuture.completedFuture(List.of()) : remainingTracks;
+	}
+
+	/**
+	 * @return a future completing with the tracks following the ones of {@link #getTracks()}, which is already completed with an empty list if the playlist was fully loaded
+	 */
+	@NotNull
+	public CompletableFuture<List<AudioTrack>> getRemainingTracks() {
+		return this.remainingTracks;
+	}
+
+	/**
+	 * @return a future completing with all tracks of the playlist once the remaining tracks are loaded
+	 */
+	@NotNull
+	public CompletableFuture<List<AudioTrack>> getAllTracks() {
+		return this.remainingTracks.thenApply(remaining -> {
+			if (remaining.isEmpty()) {
+				return this.getTracks();
+			}
+			var tracks = new ArrayList<AudioTrack>(this.getTracks().size() + remaining.size());
+			tracks.addAll(this.getTracks());
+			tracks.addAll(remaining);
+			return tracks;
+		});
+	}
+
+	/**
+	 * @return whether all tracks of the playlist are loaded
+	 */
+	public boolean isComplete() {
+		return this.remainingTracks.isDone();
 	}
 
 }
@@ -7,17 +7,26 @@ import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 import com.sedmelluq.discord.lavaplayer.track.InternalAudioTrack;
+import org.jetbrains.annotations.Nullable;
 import se.michaelthelin.spotify.model_objects.specification.Track;
 
 public class SpotifyAudioTrack extends MirroringAudioTrack {
 
-	private Track metadata;
+	@Nullable
+	private final SpotifyTrackMetadata metadata;
+	// built on first use, most tracks are never asked for the full Spotify model
+	@Nullable
+	private volatile Track track;
 
 	public SpotifyAudioTrack(AudioTrackInfo trackInfo, Track metadata, SpotifySourceManager sourceManager) {
 		this(trackInfo, metadata, null, null, null, null, null, false, sourceManager);
 	}
 
 	public SpotifyAudioTrack(AudioTrackInfo trackInfo, Track metadata, String albumName, String albumUrl, String artistUrl, String artistArtworkUrl, String previewUrl, boolean isPreview, MirroringAudioSourceManager sourceManager) {
+		this(trackInfo, metadata == null ? null : SpotifyTrackMetadata.of(metadata), albumName, albumUrl, artistUrl, artistArtworkUrl, previewUrl, isPreview, sourceManager);
+	}
+
+	public SpotifyAudioTrack(AudioTrackInfo trackInfo, @Nullable SpotifyTrackMetadata metadata, String albumName, String albumUrl, String artistUrl, String artistArtworkUrl, String previewUrl, boolean isPreview, MirroringAudioSourceManager sourceManager) {
 		super(trackInfo, albumName, albumUrl, artistUrl, artistArtworkUrl, previewUrl, isPreview, sourceManager);
 		this.metadata = metadata;
 	}
@@ -29,14 +38,46 @@ public class SpotifyAudioTrack extends MirroringAudioTrack {
 
 	@Override
 	protected AudioTrack makeShallowClone() {
-		return new SpotifyAudioTrack(this.trackInfo, this.metadata, (SpotifySourceManager) this.sourceManager);
+		return new SpotifyAudioTrack(this.trackInfo, this.metadata, this.albumName, this.albumUrl, this.artistUrl, this.artistArtworkUrl, this.previewUrl, this.isPreview, this.sourceManager);
 	}
 
 	public boolean isLocal() {
-        return this.trackInfo.identifier.equals("local");
-    }
+		return this.trackInfo.identifier.equals("local");
+	}
+
+	@Override
+	public boolean hasUniqueIdentifier() {
+		return !this.isLocal();
+	}
+
+	/**
+	 * @return the compact metadata of this track or null if it is unknown
+	 */
+	@Nullable
+	public SpotifyTrackMetadata getTrackMetadata() {
+		return this.metadata;
+	}
 
+	/**
+	 * The Spotify {@link Track} model is built from the metadata of this track on the first call and reused afterwards. Prefer {@link #getTrackMetadata()}.
+	 *
+	 * @return the metadata of this track or null if it is unknown
+	 */
+	@Nullable
 	public Track getMetadata() {
-		return metadata;
+		if (this.metadata == null) {
+			return null;
+		}
+		var track = this.track;
+		if (track == null) {
+			synchronized (this) {
+				track = this.track;
+				if (track == null) {
+					track = this.metadata.toTrack();
+					this.track = track;
+				}
+			}
+		}
+		return track;
 	}
 }
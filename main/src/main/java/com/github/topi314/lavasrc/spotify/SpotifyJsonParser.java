@@ -0,0 +1,520 @@
+package com.github.topi314.lavasrc.spotify;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.michaelthelin.spotify.enums.AlbumType;
+import se.michaelthelin.spotify.enums.ReleaseDatePrecision;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parses Spotify Web API responses containing tracks straight into {@link SpotifyTrackMetadata} with the Jackson streaming API.
+ * <p>
+ * Unlike the model parsers of the Spotify library this builds neither a JSON tree nor the full model object graph,
+ * attributes LavaSrc does not use are skipped without being materialized.
+ */
+final class SpotifyJsonParser {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private SpotifyJsonParser() {
+	}
+
+	/**
+	 * Parses a playlist object with its embedded first page of items.
+	 */
+	@NotNull
+	static PlaylistResult parsePlaylist(String json) throws IOException {
+		try (var parser = JSON_FACTORY.createParser(json)) {
+			expectObject(parser.nextToken());
+			String snapshotId = null;
+			String name = null;
+			String url = null;
+			String artworkUrl = null;
+			String author = null;
+			var tracks = TrackPage.EMPTY;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				var field = parser.getCurrentName();
+				parser.nextToken();
+				switch (field) {
+					case "snapshot_id":
+						snapshotId = parser.getValueAsString();
+						break;
+					case "name":
+						name = parser.getValueAsString();
+						break;
+					case "external_urls":
+						url = readSpotifyUrl(parser);
+						break;
+					case "images":
+						artworkUrl = readFirstImageUrl(parser);
+						break;
+					case "owner":
+						author = readDisplayName(parser);
+						break;
+					case "tracks":
+						tracks = readTrackPage(parser, true);
+						break;
+					default:
+						parser.skipChildren();
+				}
+			}
+			return new PlaylistResult(snapshotId, name, url, artworkUrl, author, tracks);
+		}
+	}
+
+	/**
+	 * Parses a page of playlist items, skipping episodes and removed tracks.
+	 */
+	@NotNull
+	static TrackPage parsePlaylistItems(String json) throws IOException {
+		try (var parser = JSON_FACTORY.createParser(json)) {
+			parser.nextToken();
+			return readTrackPage(parser, true);
+		}
+	}
+
+	/**
+	 * Parses the response of a track search.
+	 */
+	@NotNull
+	static TrackPage parseSearchTracks(String json) throws IOException {
+		try (var parser = JSON_FACTORY.createParser(json)) {
+			expectObject(parser.nextToken());
+			var tracks = TrackPage.EMPTY;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				var field = parser.getCurrentName();
+				parser.nextToken();
+				if (field.equals("tracks")) {
+					tracks = readTrackPage(parser, false);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return tracks;
+		}
+	}
+
+	/**
+	 * Parses the response of the several tracks endpoint.
+	 *
+	 * @param album the album to share between all tracks instead of parsing the album of each track or null to parse them
+	 * @return the tracks in request order, null for ids Spotify does not know
+	 */
+	@NotNull
+	static List<SpotifyTrackMetadata> parseSeveralTracks(String json, @Nullable SpotifyTrackMetadata.Album album) throws IOException {
+		try (var parser = JSON_FACTORY.createParser(json)) {
+			expectObject(parser.nextToken());
+			List<SpotifyTrackMetadata> tracks = List.of();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				var field = parser.getCurrentName();
+				parser.nextToken();
+				if (field.equals("tracks") && parser.currentToken() == JsonToken.START_ARRAY) {
+					tracks = new ArrayList<>();
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						tracks.add(readTrack(parser, album));
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return tracks;
+		}
+	}
+
+	private static TrackPage readTrackPage(JsonParser parser, boolean playlistItems) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return TrackPage.EMPTY;
+		}
+		var tracks = new ArrayList<SpotifyTrackMetadata>();
+		var itemCount = 0;
+		String next = null;
+		var offset = 0;
+		var total = 0;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			var field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+				case "items":
+					if (parser.currentToken() != JsonToken.START_ARRAY) {
+						parser.skipChildren();
+						break;
+					}
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						itemCount++;
+						var track = playlistItems ? readPlaylistItem(parser) : readTrack(parser, null);
+						if (track != null) {
+							tracks.add(track);
+						}
+					}
+					break;
+				case "next":
+					next = parser.getValueAsString();
+					break;
+				case "offset":
+					offset = parser.getValueAsInt();
+					break;
+				case "total":
+					total = parser.getValueAsInt();
+					break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		return new TrackPage(tracks, itemCount, next, offset, total);
+	}
+
+	@Nullable
+	private static SpotifyTrackMetadata readPlaylistItem(JsonParser parser) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return null;
+		}
+		SpotifyTrackMetadata track = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			var field = parser.getCurrentName();
+			parser.nextToken();
+			if (field.equals("track")) {
+				track = readTrack(parser, null);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return track;
+	}
+
+	/**
+	 * @param sharedAlbum the album to use instead of parsing the album of the track
+	 * @return the track or null if the value is null or not a track, like an episode
+	 */
+	@Nullable
+	private static SpotifyTrackMetadata readTrack(JsonParser parser, @Nullable SpotifyTrackMetadata.Album sharedAlbum) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return null;
+		}
+		String type = null;
+		String id = null;
+		String name = null;
+		var durationMs = -1;
+		var popularity = -1;
+		var trackNumber = -1;
+		var discNumber = -1;
+		var explicit = false;
+		String previewUrl = null;
+		String uri = null;
+		String url = null;
+		String isrc = null;
+		var album = sharedAlbum;
+		var artists = new ArrayList<SpotifyTrackMetadata.Artist>(2);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			var field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+				case "type":
+					type = parser.getValueAsString();
+					break;
+				case "id":
+					id = parser.getValueAsString();
+					break;
+				case "name":
+					name = parser.getValueAsString();
+					break;
+				case "duration_ms":
+					durationMs = readInt(parser);
+					break;
+				case "popularity":
+					popularity = readInt(parser);
+					break;
+				case "track_number":
+					trackNumber = readInt(parser);
+					break;
+				case "disc_number":
+					discNumber = readInt(parser);
+					break;
+				case "explicit":
+					explicit = parser.getValueAsBoolean();
+					break;
+				case "preview_url":
+					previewUrl = parser.getValueAsString();
+					break;
+				case "uri":
+					uri = parser.getValueAsString();
+					break;
+				case "external_urls":
+					url = readSpotifyUrl(parser);
+					break;
+				case "external_ids":
+					isrc = readStringField(parser, "isrc");
+					break;
+				case "album":
+					if (sharedAlbum == null) {
+						album = readAlbum(parser);
+					} else {
+						parser.skipChildren();
+					}
+					break;
+				case "artists":
+					readArtists(parser, artists);
+					break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		if (type != null && !type.equals("track")) {
+			return null;
+		}
+		return new SpotifyTrackMetadata(id, name, durationMs, popularity, trackNumber, discNumber, explicit, previewUrl, uri, url, isrc, album, artists.toArray(new SpotifyTrackMetadata.Artist[0]));
+	}
+
+	@Nullable
+	private static SpotifyTrackMetadata.Album readAlbum(JsonParser parser) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return null;
+		}
+		String id = null;
+		String name = null;
+		AlbumType albumType = null;
+		String releaseDate = null;
+		ReleaseDatePrecision releaseDatePrecision = null;
+		String url = null;
+		var imageUrls = new String[0];
+		var imageSizes = new int[0];
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			var field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+				case "id":
+					id = parser.getValueAsString();
+					break;
+				case "name":
+					name = parser.getValueAsString();
+					break;
+				case "album_type":
+					albumType = readEnum(parser, AlbumType.class);
+					break;
+				case "release_date":
+					releaseDate = parser.getValueAsString();
+					break;
+				case "release_date_precision":
+					releaseDatePrecision = readEnum(parser, ReleaseDatePrecision.class);
+					break;
+				case "external_urls":
+					url = readSpotifyUrl(parser);
+					break;
+				case "images":
+					if (parser.currentToken() != JsonToken.START_ARRAY) {
+						parser.skipChildren();
+						break;
+					}
+					var count = 0;
+					imageUrls = new String[3];
+					imageSizes = new int[6];
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						if (count == imageUrls.length) {
+							imageUrls = Arrays.copyOf(imageUrls, count * 2);
+							imageSizes = Arrays.copyOf(imageSizes, count * 4);
+						}
+						if (readImage(parser, imageUrls, imageSizes, count)) {
+							count++;
+						}
+					}
+					imageUrls = Arrays.copyOf(imageUrls, count);
+					imageSizes = Arrays.copyOf(imageSizes, count * 2);
+					break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		return new SpotifyTrackMetadata.Album(id, name, albumType, releaseDate, releaseDatePrecision, url, imageUrls, imageSizes);
+	}
+
+	private static boolean readImage(JsonParser parser, String[] imageUrls, int[] imageSizes, int index) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return false;
+		}
+		imageUrls[index] = null;
+		imageSizes[index * 2] = -1;
+		imageSizes[index * 2 + 1] = -1;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			var field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+				case "url":
+					imageUrls[index] = parser.getValueAsString();
+					break;
+				case "width":
+					imageSizes[index * 2] = readInt(parser);
+					break;
+				case "height":
+					imageSizes[index * 2 + 1] = readInt(parser);
+					break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		return true;
+	}
+
+	private static void readArtists(JsonParser parser, List<SpotifyTrackMetadata.Artist> artists) throws IOException {
+		if (parser.currentToken() != JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return;
+		}
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			if (parser.currentToken() != JsonToken.START_OBJECT) {
+				parser.skipChildren();
+				continue;
+			}
+			String id = null;
+			String name = null;
+			String url = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				var field = parser.getCurrentName();
+				parser.nextToken();
+				switch (field) {
+					case "id":
+						id = parser.getValueAsString();
+						break;
+					case "name":
+						name = parser.getValueAsString();
+						break;
+					case "external_urls":
+						url = readSpotifyUrl(parser);
+						break;
+					default:
+						parser.skipChildren();
+				}
+			}
+			artists.add(new SpotifyTrackMetadata.Artist(id, name, url));
+		}
+	}
+
+	@Nullable
+	private static String readFirstImageUrl(JsonParser parser) throws IOException {
+		if (parser.currentToken() != JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return null;
+		}
+		String url = null;
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			if (url == null && parser.currentToken() == JsonToken.START_OBJECT) {
+				url = readStringField(parser, "url");
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return url;
+	}
+
+	@Nullable
+	private static String readDisplayName(JsonParser parser) throws IOException {
+		return readStringField(parser, "display_name");
+	}
+
+	@Nullable
+	private static String readSpotifyUrl(JsonParser parser) throws IOException {
+		return readStringField(parser, "spotify");
+	}
+
+	/**
+	 * Reads the given string field of the current object and skips everything else.
+	 */
+	@Nullable
+	private static String readStringField(JsonParser parser, String name) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return null;
+		}
+		String value = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			var field = parser.getCurrentName();
+			parser.nextToken();
+			if (field.equals(name)) {
+				value = parser.getValueAsString();
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return value;
+	}
+
+	private static int readInt(JsonParser parser) throws IOException {
+		return parser.currentToken() == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : -1;
+	}
+
+	@Nullable
+	private static <E extends Enum<E>> E readEnum(JsonParser parser, Class<E> type) throws IOException {
+		var value = parser.getValueAsString();
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static void expectObject(JsonToken token) throws IOException {
+		if (token != JsonToken.START_OBJECT) {
+			throw new IOException("Expected a JSON object but got " + token);
+		}
+	}
+
+	static final class TrackPage {
+
+		static final TrackPage EMPTY = new TrackPage(List.of(), 0, null, 0, 0);
+
+		// the parsed tracks, without items which are not tracks
+		final List<SpotifyTrackMetadata> tracks;
+		// the number of items of the page, including the ones which are not tracks
+		final int itemCount;
+		@Nullable
+		final String next;
+		final int offset;
+		final int total;
+
+		private TrackPage(List<SpotifyTrackMetadata> tracks, int itemCount, @Nullable String next, int offset, int total) {
+			this.tracks = tracks;
+			this.itemCount = itemCount;
+			this.next = next;
+			this.offset = offset;
+			this.total = total;
+		}
+
+	}
+
+	static final class PlaylistResult {
+
+		@Nullable
+		final String snapshotId;
+		final String name;
+		final String url;
+		@Nullable
+		final String artworkUrl;
+		final String author;
+		final TrackPage tracks;
+
+		private PlaylistResult(@Nullable String snapshotId, String name, String url, @Nullable String artworkUrl, String author, TrackPage tracks) {
+			this.snapshotId = snapshotId;
+			this.name = name;
+			this.url = url;
+			this.artworkUrl = artworkUrl;
+			this.author = author;
+			this.tracks = tracks;
+		}
+
+	}
+
+}
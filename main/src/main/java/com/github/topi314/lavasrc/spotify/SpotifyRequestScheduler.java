@@ -0,0 +1,257 @@
+package com.github.topi314.lavasrc.spotify;
+
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import org.apache.hc.core5.http.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import se.michaelthelin.spotify.requests.IRequest;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules requests to the Spotify Web API so rate limits delay requests instead of failing them.
+ * <p>
+ * The number of requests in flight is limited by an additive increase, multiplicative decrease limit: every successful request raises the limit
+ * by a fraction so it grows by about one per round trip, every rate limited response halves it. While Spotify asks to back off via {@code Retry-After},
+ * no request is sent and rate limited requests are retried afterwards. Requests are admitted strictly in arrival order by handing out tickets,
+ * but fail right away if the pause is longer than 30 seconds.
+ */
+public class SpotifyRequestScheduler {
+
+	public static final int DEFAULT_INITIAL_CONCURRENCY = 8;
+	public static final int DEFAULT_MAX_CONCURRENCY = 32;
+	public static final int DEFAULT_MAX_RETRIES = 3;
+	// used if Spotify does not send a Retry-After header
+	private static final long DEFAULT_RETRY_AFTER_MILLIS = 1000;
+	// Spotify sometimes asks to back off for hours, requests fail instead of blocking their thread for that long
+	private static final long MAX_PAUSE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	private static final Logger log = LoggerFactory.getLogger(SpotifyRequestScheduler.class);
+
+	private final int maxConcurrency;
+	private final int maxRetries;
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private final Condition available = this.lock.newCondition();
+	// guarded by lock
+	private double limit;
+	private int inFlight;
+	private int queued;
+	private long pausedUntil;
+	// the next ticket handed out and the ticket allowed to be admitted next
+	private long nextTicket;
+	private long servingTicket;
+	// tickets of requests which stopped waiting before their turn
+	private final Set<Long> abandonedTickets = new HashSet<>();
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder throttles = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+
+	public SpotifyRequestScheduler() {
+		this(DEFAULT_INITIAL_CONCURRENCY, DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_RETRIES);
+	}
+
+	/**
+	 * @param maxRetries how often a rate limited request is retried before the {@link TooManyRequestsException} is thrown
+	 */
+	public SpotifyRequestScheduler(int initialConcurrency, int maxConcurrency, int maxRetries) {
+		if (initialConcurrency < 1 || maxConcurrency < initialConcurrency || maxRetries < 0) {
+			throw new IllegalArgumentException("Initial concurrency must be greater than 0 and not exceed the max concurrency, max retries must not be negative");
+		}
+		this.limit = initialConcurrency;
+		this.maxConcurrency = maxConcurrency;
+		this.maxRetries = maxRetries;
+	}
+
+	public <T> T execute(IRequest<T> request) throws IOException, SpotifyWebApiException, ParseException {
+		return this.execute(request::execute);
+	}
+
+	/**
+	 * Executes a call sending a single request to the Spotify Web API, for example one parsing the raw response of an {@link IRequest}.
+	 */
+	public <T> T execute(Call<T> call) throws IOException, SpotifyWebApiException, ParseException {
+		for (var attempt = 0; ; attempt++) {
+			this.acquire();
+			try {
+				var result = call.execute();
+				this.onSuccess();
+				return result;
+			} catch (TooManyRequestsException e) {
+				this.onThrottled(e.getRetryAfter());
+				if (attempt >= this.maxRetries) {
+					throw e;
+				}
+				log.debug("Spotify rate limited a request, retrying after {}s", e.getRetryAfter());
+			} finally {
+				this.release();
+			}
+		}
+	}
+
+	private void acquire() throws IOException {
+		var start = System.nanoTime();
+		this.lock.lock();
+		try {
+			var ticket = this.nextTicket++;
+			var admitted = false;
+			this.queued++;
+			try {
+				while (true) {
+					var pause = this.pausedUntil - System.currentTimeMillis();
+					if (pause > MAX_PAUSE_MILLIS) {
+						throw new FriendlyException("Spotify is rate limiting requests for another " + TimeUnit.MILLISECONDS.toSeconds(pause) + "s", FriendlyException.Severity.SUSPICIOUS, null);
+					}
+					// only the request holding the current ticket may be admitted, so woken requests can't overtake each other
+					if (ticket != this.servingTicket) {
+						this.available.await();
+					} else if (pause > 0) {
+						this.available.await(pause, TimeUnit.MILLISECONDS);
+					} else if (this.inFlight >= (int) this.limit) {
+						this.available.await();
+					} else {
+						break;
+					}
+				}
+				admitted = true;
+			} finally {
+				this.queued--;
+				if (admitted) {
+					this.inFlight++;
+					this.nextTurn();
+				} else if (ticket == this.servingTicket) {
+					this.nextTurn();
+				} else {
+					this.abandonedTickets.add(ticket);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a Spotify request slot", e);
+		} finally {
+			this.lock.unlock();
+		}
+		this.requests.increment();
+		this.totalWaitNanos.add(System.nanoTime() - start);
+	}
+
+	// guarded by lock
+	private void nextTurn() {
+		this.servingTicket++;
+		while (this.abandonedTickets.remove(this.servingTicket)) {
+			this.servingTicket++;
+		}
+		this.available.signalAll();
+	}
+
+	private void release() {
+		this.lock.lock();
+		try {
+			this.inFlight--;
+			this.available.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void onSuccess() {
+		this.lock.lock();
+		try {
+			this.limit = Math.min(this.maxConcurrency, this.limit + 1 / this.limit);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void onThrottled(int retryAfterSeconds) {
+		this.throttles.increment();
+		var retryAfterMillis = retryAfterSeconds > 0 ? TimeUnit.SECONDS.toMillis(retryAfterSeconds) : DEFAULT_RETRY_AFTER_MILLIS;
+		var until = System.currentTimeMillis() + retryAfterMillis;
+		this.lock.lock();
+		try {
+			// requests which were already in flight get throttled as well, only back off once per pause
+			if (until > this.pausedUntil) {
+				if (System.currentTimeMillis() >= this.pausedUntil) {
+					this.limit = Math.max(1, this.limit / 2);
+					log.warn("Spotify rate limit hit, pausing requests for {}ms and lowering concurrency to {}", retryAfterMillis, (int) this.limit);
+				}
+				this.pausedUntil = until;
+				// waiting requests fail right away if the pause is too long
+				this.available.signalAll();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of requests waiting to be sent
+	 */
+	public int getQueueDepth() {
+		this.lock.lock();
+		try {
+			return this.queued;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		this.lock.lock();
+		try {
+			return this.inFlight;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int getConcurrencyLimit() {
+		this.lock.lock();
+		try {
+			return (int) this.limit;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of requests sent, including retries
+	 */
+	public long getRequestCount() {
+		return this.requests.sum();
+	}
+
+	/**
+	 * @return the number of rate limited responses
+	 */
+	public long getThrottleCount() {
+		return this.throttles.sum();
+	}
+
+	/**
+	 * @return the total time requests spent waiting to be sent in milliseconds
+	 */
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.totalWaitNanos.sum());
+	}
+
+	public double getAverageWaitMillis() {
+		var requests = this.requests.sum();
+		return requests == 0 ? 0 : (double) this.getTotalWaitMillis() / requests;
+	}
+
+	@FunctionalInterface
+	public interface Call<T> {
+
+		T execute() throws IOException, SpotifyWebApiException, ParseException;
+
+	}
+
+}
@@ -1,5 +1,8 @@
 package com.github.topi314.lavasrc.spotify;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.topi314.lavalyrics.AudioLyricsManager;
 import com.github.topi314.lavalyrics.lyrics.AudioLyrics;
 import com.github.topi314.lavalyrics.lyrics.BasicAudioLyrics;
@@ -8,16 +11,16 @@ import com.github.topi314.lavasearch.result.AudioSearchResult;
 import com.github.topi314.lavasearch.result.BasicAudioSearchResult;
 import com.github.topi314.lavasrc.ExtendedAudioPlaylist;
 import com.github.topi314.lavasrc.LavaSrcTools;
+import com.github.topi314.lavasrc.TokenProvider;
 import com.github.topi314.lavasrc.mirror.DefaultMirroringAudioTrackResolver;
 import com.github.topi314.lavasrc.mirror.MirroringAudioSourceManager;
 import com.github.topi314.lavasrc.mirror.MirroringAudioTrackResolver;
 import com.github.topi314.lavasrc.spotify.external.SearchItemRequestSpecial;
 import com.github.topi314.lavasrc.spotify.external.SearchResultSpecial;
 import com.github.topi314.lavasrc.spotify.external.TrackWrapper;
-import com.google.gson.Gson;
 import com.neovisionaries.i18n.CountryCode;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
-import com.sedmelluq.discord.lavaplayer.tools.DataFormatTools;
+import com.sedmelluq.discord.lavaplayer.tools.DaemonThreadFactory;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpConfigurable;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterfaceManager;
@@ -33,18 +36,24 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.michaelthelin.spotify.SpotifyApi;
-import se.michaelthelin.spotify.enums.ModelObjectType;
 import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
 import se.michaelthelin.spotify.model_objects.specification.*;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
@@ -61,6 +70,32 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 	public static final String SHARE_URL = "https://spotify.link/";
 	public static final int PLAYLIST_MAX_PAGE_ITEMS = 100;
 	public static final int ALBUM_MAX_PAGE_ITEMS = 50;
+	/**
+	 * The fields of playlist item pages read by {@link #parseTrack} and {@link SpotifyTrackMetadata#of(Track)}, everything else like the available markets is left out of the response.
+	 * Needs to be kept in sync with the fields read when parsing playlist tracks.
+	 */
+	public static final String PLAYLIST_ITEM_FIELDS = "items(is_local,track(type,id,name,duration_ms,popularity,track_number,disc_number,explicit,preview_url,uri,external_urls,external_ids," +
+		"album(type,id,name,album_type,release_date,release_date_precision,external_urls,images),artists(type,id,name,external_urls))),limit,next,offset,total";
+	public static final String PLAYLIST_FIELDS = "name,snapshot_id,external_urls,images,owner(display_name),tracks(" + PLAYLIST_ITEM_FIELDS + ")";
+	public static final int DEFAULT_PLAYLIST_PAGE_CONCURRENCY = 4;
+	/**
+	 * The number of playlist loads whose pages can be fetched at full concurrency at the same time. Pages of further loads queue up for a free thread.
+	 */
+	public static final int PLAYLIST_PAGE_PARALLEL_LOADS = 4;
+	public static final int ARTISTS_MAX_BATCH_SIZE = 50;
+	public static final int TRACKS_MAX_BATCH_SIZE = 50;
+	public static final String TRACK_URI_PREFIX = "spotify:track:";
+	private static final Pattern TRACK_ID_PATTERN = Pattern.compile("[a-zA-Z0-9]+");
+	public static final Duration ARTIST_CACHE_TTL = Duration.ofHours(24);
+	public static final Duration PLAYLIST_CACHE_TTL = Duration.ofHours(6);
+	// within this interval cached playlists are used without checking their snapshot id
+	public static final Duration PLAYLIST_SNAPSHOT_CHECK_INTERVAL = Duration.ofMinutes(1);
+	public static final long PLAYLIST_CACHE_MAX_TRACKS = 500000;
+	public static final Duration SEARCH_CACHE_TTL = Duration.ofMinutes(10);
+	public static final long SEARCH_CACHE_MAX_SIZE = 10000;
+	public static final Duration LYRICS_CACHE_TTL = Duration.ofHours(24);
+	public static final long LYRICS_CACHE_MAX_SIZE = 5000;
+	private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
 	public static final String API_BASE = "https://api.spotify.com/v1/";
 	public static final String CLIENT_API_BASE = "https://spclient.wg.spotify.com/";
 	public static final Set<AudioSearchResult.Type> SEARCH_TYPES = Set.of(AudioSearchResult.Type.ALBUM, AudioSearchResult.Type.ARTIST, AudioSearchResult.Type.PLAYLIST, AudioSearchResult.Type.TRACK);
@@ -75,11 +110,47 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 	private int playlistPageLimit = 6;
 	@Setter
 	private int albumPageLimit = 6;
-
-	private String spToken;
-	private Instant spTokenExpire;
-
-	private final Gson gson = new Gson();
+	/**
+	 * If enabled, playlists are returned as soon as their first page is loaded and the remaining tracks are available via {@link SpotifyAudioPlaylist#getRemainingTracks()}.
+	 */
+	@Setter
+	private boolean incrementalPlaylistLoading = false;
+	// sized from the page concurrency so a few loads can run side by side without spawning a thread per page, rate limits are handled by the request scheduler
+	private final ThreadPoolExecutor pageExecutor = createPageExecutor(DEFAULT_PLAYLIST_PAGE_CONCURRENCY * PLAYLIST_PAGE_PARALLEL_LOADS);
+	private volatile int playlistPageConcurrency = DEFAULT_PLAYLIST_PAGE_CONCURRENCY;
+
+	// artist images almost never change, but are needed for almost every load
+	private final Cache<String, List<Image>> artistImageCache = Caffeine.newBuilder()
+		.maximumSize(10000)
+		.expireAfterWrite(ARTIST_CACHE_TTL)
+		.build();
+
+	// playlists keyed by id, reused as long as their snapshot id did not change
+	private final Cache<String, CachedPlaylist> playlistCache = Caffeine.newBuilder()
+		.maximumWeight(PLAYLIST_CACHE_MAX_TRACKS)
+		.<String, CachedPlaylist>weigher((key, playlist) -> playlist.tracks.size() + 1)
+		.expireAfterAccess(PLAYLIST_CACHE_TTL)
+		.build();
+
+	// search results keyed by normalized query, popular searches are repeated a lot in a short time
+	private final Cache<String, CachedSearch> searchCache = Caffeine.newBuilder()
+		.maximumSize(SEARCH_CACHE_MAX_SIZE)
+		.expireAfterWrite(SEARCH_CACHE_TTL)
+		.recordStats()
+		.build();
+
+	// lyrics keyed by Spotify track id, clients poll them for every listener of a track
+	private final Cache<String, CachedLyrics> lyricsCache = Caffeine.newBuilder()
+		.maximumSize(LYRICS_CACHE_MAX_SIZE)
+		.expireAfterWrite(LYRICS_CACHE_TTL)
+		.build();
+	// Spotify track ids of non Spotify tracks keyed by their isrc or normalized title and author, empty if no track was found
+	private final Cache<String, String> lyricsTrackIdCache = Caffeine.newBuilder()
+		.maximumSize(LYRICS_CACHE_MAX_SIZE)
+		.expireAfterWrite(LYRICS_CACHE_TTL)
+		.build();
+
+	private final TokenProvider<String> spToken = new TokenProvider<>("spotify web player", this::loadSpToken);
 
 	public SpotifySourceManager(String[] providers, String clientId, String clientSecret, String countryCode, AudioPlayerManager audioPlayerManager) {
 		this(clientId, clientSecret, null, countryCode, unused -> audioPlayerManager, new DefaultMirroringAudioTrackResolver(providers));
@@ -109,6 +180,33 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		this.countryCode = countryCode;
 	}
 
+	/**
+	 * @param playlistPageConcurrency the maximum number of pages fetched at the same time for a single playlist load
+	 */
+	public void setPlaylistPageConcurrency(int playlistPageConcurrency) {
+		if (playlistPageConcurrency < 1) {
+			throw new IllegalArgumentException("Playlist page concurrency must be greater than 0");
+		}
+		var threads = playlistPageConcurrency * PLAYLIST_PAGE_PARALLEL_LOADS;
+		synchronized (this.pageExecutor) {
+			// the core size must never exceed the maximum size, so the order depends on the direction
+			if (threads > this.pageExecutor.getMaximumPoolSize()) {
+				this.pageExecutor.setMaximumPoolSize(threads);
+				this.pageExecutor.setCorePoolSize(threads);
+			} else {
+				this.pageExecutor.setCorePoolSize(threads);
+				this.pageExecutor.setMaximumPoolSize(threads);
+			}
+		}
+		this.playlistPageConcurrency = playlistPageConcurrency;
+	}
+
+	private static ThreadPoolExecutor createPageExecutor(int threads) {
+		var executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory("spotify-playlist-pages"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 	@NotNull
 	@Override
 	public String getSourceName() {
@@ -118,35 +216,25 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 	@Override
 	@Nullable
 	public AudioLyrics loadLyrics(@NotNull AudioTrack audioTrack) {
+		// without an spDc there are no lyrics, so don't search for the track either
+		if (this.spDc == null || this.spDc.isEmpty()) {
+			throw new IllegalArgumentException("Spotify spDc must be set");
+		}
+
 		var spotifyTackId = "";
 		if (audioTrack instanceof SpotifyAudioTrack) {
 			spotifyTackId = audioTrack.getIdentifier();
 		}
 
 		if (spotifyTackId.isEmpty()) {
-			AudioItem item = AudioReference.NO_TRACK;
 			try {
-				if (audioTrack.getInfo().isrc != null && !audioTrack.getInfo().isrc.isEmpty()) {
-					item = this.getSearch("isrc:" + audioTrack.getInfo().isrc, false);
-				}
-				if (item == AudioReference.NO_TRACK) {
-					item = this.getSearch(String.format("%s %s", audioTrack.getInfo().title, audioTrack.getInfo().author), false);
-				}
+				spotifyTackId = this.findLyricsTrackId(audioTrack);
 			} catch (IOException | ParseException e) {
 				throw new RuntimeException(e);
 			}
-
-			if (item == AudioReference.NO_TRACK) {
+			if (spotifyTackId.isEmpty()) {
 				return null;
 			}
-			if (item instanceof AudioTrack) {
-				spotifyTackId = ((AudioTrack) item).getIdentifier();
-			} else if (item instanceof AudioPlaylist) {
-				var playlist = (AudioPlaylist) item;
-				if (!playlist.getTracks().isEmpty()) {
-					spotifyTackId = playlist.getTracks().get(0).getIdentifier();
-				}
-			}
 		}
 
 		try {
@@ -156,29 +244,104 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		}
 	}
 
+	/**
+	 * A miss is only cached if the searches succeeded without results, failed searches are retried on the next call.
+	 *
+	 * @return the id of the Spotify track matching the given track or an empty string if there is none
+	 */
+	private String findLyricsTrackId(AudioTrack audioTrack) throws IOException, ParseException {
+		var info = audioTrack.getInfo();
+		var hasIsrc = info.isrc != null && !info.isrc.isEmpty();
+		var cacheKey = hasIsrc ? "isrc:" + info.isrc : "query:" + normalizeQuery(info.title + " " + info.author);
+		var cached = this.lyricsTrackIdCache.getIfPresent(cacheKey);
+		if (cached != null) {
+			return cached;
+		}
+
+		String spotifyTackId = null;
+		var failed = false;
+		if (hasIsrc) {
+			spotifyTackId = this.searchFirstTrackId("isrc:" + info.isrc);
+			failed = spotifyTackId == null;
+		}
+		if (spotifyTackId == null || spotifyTackId.isEmpty()) {
+			spotifyTackId = this.searchFirstTrackId(String.format("%s %s", info.title, info.author));
+			failed |= spotifyTackId == null;
+		}
+
+		if (spotifyTackId != null && !spotifyTackId.isEmpty()) {
+			this.lyricsTrackIdCache.put(cacheKey, spotifyTackId);
+			return spotifyTackId;
+		}
+		if (!failed) {
+			this.lyricsTrackIdCache.put(cacheKey, "");
+		}
+		return "";
+	}
+
+	/**
+	 * Only the id is needed to find lyrics, so this neither loads more than one track nor their artist images.
+	 *
+	 * @return the id of the first track found, an empty string if there is none or null if the search failed
+	 */
+	@Nullable
+	private String searchFirstTrackId(String query) throws IOException, ParseException {
+		var request = spotifyApiAccessor
+			.getSpotifyApi()
+			.searchTracks(query)
+			.limit(1)
+			.build();
+
+		SpotifyJsonParser.TrackPage result;
+		try {
+			result = spotifyApiAccessor.execute(() -> SpotifyJsonParser.parseSearchTracks(request.getJson()));
+		} catch (SpotifyWebApiException ignored) {
+			return null;
+		}
+		if (result.tracks.isEmpty() || result.tracks.get(0).getId() == null) {
+			return "";
+		}
+		return result.tracks.get(0).getId();
+	}
+
 	public AudioLyrics getLyrics(String id) throws IOException {
 		if (this.spDc == null || this.spDc.isEmpty()) {
 			throw new IllegalArgumentException("Spotify spDc must be set");
 		}
 
+		CachedLyrics cached;
+		try {
+			// concurrent requests for the same track share a single fetch
+			cached = this.lyricsCache.get(id, key -> {
+				try {
+					return this.fetchLyrics(key);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return cached.toLyrics();
+	}
+
+	private CachedLyrics fetchLyrics(String id) throws IOException {
 		var request = new HttpGet(CLIENT_API_BASE + "color-lyrics/v2/track/" + id + "?format=json&vocalRemoval=false");
 		request.addHeader("App-Platform", "WebPlayer");
 		request.addHeader("Authorization", "Bearer " + this.getSpToken());
 		var json = LavaSrcTools.fetchResponseAsJson(this.httpInterfaceManager.getInterface(), request);
 		if (json == null) {
-			return null;
+			return CachedLyrics.NONE;
 		}
 
-		var lyrics = new ArrayList<AudioLyrics.Line>();
-		for (var line : json.get("lyrics").get("lines").values()) {
-			lyrics.add(new BasicAudioLyrics.BasicLine(
-				Duration.ofMillis(line.get("startTimeMs").asLong(0)),
-				null,
-				line.get("words").text()
-			));
+		var lines = json.get("lyrics").get("lines").values();
+		var startTimes = new long[lines.size()];
+		var words = new String[lines.size()];
+		for (var i = 0; i < lines.size(); i++) {
+			startTimes[i] = lines.get(i).get("startTimeMs").asLong(0);
+			words[i] = lines.get(i).get("words").text();
 		}
-
-		return new BasicAudioLyrics("spotify", "MusixMatch", null, lyrics);
+		return new CachedLyrics(startTimes, words);
 	}
 
 	@Override
@@ -186,20 +349,17 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		super.encodeTrack(track, output);
 
 		if (track instanceof SpotifyAudioTrack) {
-			log.info("[DEBUG] Encoded track.");
-			DataFormatTools.writeNullableText(output, gson.toJson(((SpotifyAudioTrack) track).getMetadata()));
+			SpotifyTrackMetadataCodec.encode(((SpotifyAudioTrack) track).getTrackMetadata(), output);
 		}
 	}
 
 	@Override
 	public AudioTrack decodeTrack(AudioTrackInfo trackInfo, DataInput input) throws IOException {
 		var extendedAudioTrackInfo = super.decodeTrack(input);
-		var encodedMetadata =  DataFormatTools.readNullableText(input);
-
-		log.info("[DEBUG] Decoded track, {} chars for metadata", encodedMetadata.length());
+		var metadata = SpotifyTrackMetadataCodec.decode(input);
 
 		return new SpotifyAudioTrack(trackInfo,
-			new Track.JsonUtil().createModelObject(encodedMetadata),
+			metadata,
 			extendedAudioTrackInfo.albumName,
 			extendedAudioTrackInfo.albumUrl,
 			extendedAudioTrackInfo.artistUrl,
@@ -242,17 +402,8 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 
 			// If the identifier is a share URL, we need to follow the redirect to find out the real url behind it
 			if (identifier.startsWith(SHARE_URL)) {
-				var request = new HttpHead(identifier);
-				request.setConfig(RequestConfig.custom().setRedirectsEnabled(false).build());
-				try (var response = this.httpInterfaceManager.getInterface().execute(request)) {
-					if (response.getStatusLine().getStatusCode() == 307) {
-						var location = response.getFirstHeader("Location").getValue();
-						if (location.startsWith("https://open.spotify.com/")) {
-							return this.loadItem(location, preview);
-						}
-					}
-					return null;
-				}
+				var location = LavaSrcTools.resolveShareLink(this.httpInterfaceManager.getInterface(), new HttpHead(identifier), 307, "https://open.spotify.com/");
+				return location == null ? null : this.loadItem(location, preview);
 			}
 
 			var matcher = URL_PATTERN.matcher(identifier);
@@ -281,20 +432,29 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 	}
 
 	public void requestSpToken() throws IOException {
+		this.spToken.refresh();
+	}
+
+	private TokenProvider.Token<String> loadSpToken() throws IOException {
 		var request = new HttpGet("https://open.spotify.com/get_access_token?reason=transport&productType=web_player");
 		request.addHeader("App-Platform", "WebPlayer");
 		request.addHeader("Cookie", "sp_dc=" + this.spDc);
+		request.setConfig(TokenProvider.LOAD_REQUEST_CONFIG);
 
 		var json = LavaSrcTools.fetchResponseAsJson(this.httpInterfaceManager.getInterface(), request);
-		this.spToken = json.get("accessToken").text();
-		this.spTokenExpire = Instant.ofEpochMilli(json.get("accessTokenExpirationTimestampMs").asLong(0));
+		if (json == null) {
+			throw new IOException("No response while requesting Spotify web player token");
+		}
+		var accessToken = json.get("accessToken").text();
+		var expiresAt = json.get("accessTokenExpirationTimestampMs");
+		if (accessToken == null || accessToken.isEmpty() || expiresAt.isNull()) {
+			throw new IOException("Spotify web player token response is missing the token or its expiry");
+		}
+		return new TokenProvider.Token<>(accessToken, Instant.ofEpochMilli(expiresAt.asLong(0)));
 	}
 
 	public String getSpToken() throws IOException {
-		if (this.spToken == null || this.spTokenExpire == null || this.spTokenExpire.isBefore(Instant.now())) {
-			this.requestSpToken();
-		}
-		return this.spToken;
+		return this.spToken.get();
 	}
 
 	private AudioSearchResult getAutocomplete(String query, Set<AudioSearchResult.Type> types) throws IOException, ParseException, SpotifyWebApiException {
@@ -314,7 +474,7 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		SearchResultSpecial result;
 
 		try {
-			result = requestBuilder.execute();
+			result = spotifyApiAccessor.execute(requestBuilder);
 		} catch (SpotifyWebApiException ex) {
 			return AudioSearchResult.EMPTY;
 		}
@@ -368,49 +528,78 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 	}
 
 	public AudioItem getSearch(String query, boolean preview) throws IOException, ParseException {
-		var tracksRequest = spotifyApiAccessor
-			.getSpotifyApi()
-			.searchTracks(query)
-			.build();
-
-		Paging<Track> tracksResult = null;
-
-		try {
-			tracksResult = tracksRequest.execute();
-		} catch (SpotifyWebApiException ignored) {
+		var cached = this.getCachedSearch(query);
+		if (cached == null || cached.tracks.isEmpty()) {
+			return AudioReference.NO_TRACK;
 		}
 
-		if (tracksResult == null || tracksResult.getItems().length == 0) {
-			return AudioReference.NO_TRACK;
+		// tracks are built for every search, so every caller gets its own instances
+		var tracks = new ArrayList<AudioTrack>(cached.tracks.size());
+		for (var i = 0; i < cached.tracks.size(); i++) {
+			tracks.add(this.parseTrack(cached.tracks.get(i), cached.artistArtworkUrls[i], preview));
 		}
 
-		var artistIds = Arrays.stream(tracksResult.getItems()).map(track -> track.getArtists()[0].getId()).toArray(String[]::new);
+		return new BasicAudioPlaylist("Search results for: " + query, tracks, null, true);
+	}
+
+	/**
+	 * @return the cached or freshly loaded search result or null if the search failed
+	 */
+	@Nullable
+	private CachedSearch getCachedSearch(String query) throws IOException, ParseException {
+		var cacheKey = normalizeQuery(query);
+		var cached = this.searchCache.getIfPresent(cacheKey);
+		if (cached == null) {
+			cached = this.search(query);
+			if (cached != null) {
+				this.searchCache.put(cacheKey, cached);
+			}
+		}
+		return cached;
+	}
 
-		var artistRequest = spotifyApiAccessor
+	/**
+	 * @return the search result or null if the search failed
+	 */
+	@Nullable
+	private CachedSearch search(String query) throws IOException, ParseException {
+		var tracksRequest = spotifyApiAccessor
 			.getSpotifyApi()
-			.getSeveralArtists(artistIds)
+			.searchTracks(query)
 			.build();
 
-		Artist[] artistResult = null;
+		SpotifyJsonParser.TrackPage tracksResult;
 
 		try {
-			artistResult = artistRequest.execute();
+			tracksResult = spotifyApiAccessor.execute(() -> SpotifyJsonParser.parseSearchTracks(tracksRequest.getJson()));
 		} catch (SpotifyWebApiException ignored) {
+			return null;
 		}
 
-		var tracksWrappers = Arrays.stream(tracksResult.getItems()).map(e -> new TrackWrapper(e, new ArrayList<>())).collect(Collectors.toList());
-
-		if (artistResult != null) {
-			for (var artist : artistResult) {
-				for (var trackWrapper : tracksWrappers) {
-					if (trackWrapper.getTrack().getArtists()[0].getId().equals(artist.getId())) {
-						trackWrapper.setArtistImages(Arrays.asList(artist.getImages()));
-					}
-				}
-			}
+		var artistImages = this.getArtistImages(tracksResult.tracks.stream().map(SpotifySourceManager::getFirstArtistId).collect(Collectors.toList()));
+		var artistArtworkUrls = new String[tracksResult.tracks.size()];
+		for (var i = 0; i < artistArtworkUrls.length; i++) {
+			artistArtworkUrls[i] = getFirstImageUrl(artistImages.get(getFirstArtistId(tracksResult.tracks.get(i))));
 		}
+		return new CachedSearch(tracksResult.tracks, artistArtworkUrls);
+	}
+
+	/**
+	 * Spotify search is case-insensitive and ignores repeated whitespace, so queries only differing in those share a cache entry.
+	 */
+	private static String normalizeQuery(String query) {
+		return WHITESPACE_PATTERN.matcher(query.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+	}
+
+	public CacheStats getSearchCacheStats() {
+		return this.searchCache.stats();
+	}
 
-		return new BasicAudioPlaylist("Search results for: " + query, this.parseTrackItems(tracksWrappers, preview), null, true);
+	/**
+	 * @return the share of searches answered from the search cache
+	 */
+	public double getSearchCacheHitRatio() {
+		return this.searchCache.stats().hitRate();
 	}
 
 	public AudioItem getRecommendations(String query, boolean preview) throws IOException, ParseException {
@@ -427,7 +616,7 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		Recommendations result = null;
 
 		try {
-			result = requestBuilder.build().execute();
+			result = spotifyApiAccessor.execute(requestBuilder.build());
 		} catch (SpotifyWebApiException ignore) {}
 
 		if (result == null || result.getTracks().length == 0) {
@@ -453,81 +642,50 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		Album albumResult = null;
 
 		try {
-			albumResult = albumRequest.execute();
+			albumResult = spotifyApiAccessor.execute(albumRequest);
 		} catch (SpotifyWebApiException ignore) {}
 
 		if (albumResult == null) {
 			return AudioReference.NO_TRACK;
 		}
 
-		var artistRequest = spotifyApiAccessor.getSpotifyApi()
-			.getArtist(albumResult.getArtists()[0].getId())
-			.build();
-
-		Artist artistResult = null;
-
-		try {
-			artistResult = artistRequest.execute();
-		} catch (SpotifyWebApiException ignore) {}
+		var artistArtworkUrl = getFirstImageUrl(this.getArtistImages(albumResult.getArtists()[0].getId()));
+		// all tracks share the metadata of this album instead of the simplified album of each track
+		var album = SpotifyTrackMetadata.Album.of(albumResult);
 
 		var tracks = new ArrayList<AudioTrack>();
-		Paging<TrackSimplified> albumTracksResult = null;
-		var offset = 0;
+		// the first page of tracks is part of the album response
+		var albumTracksResult = albumResult.getTracks();
 		var pages = 0;
-		do {
-			var albumsTracksRequest = spotifyApiAccessor.getSpotifyApi()
-				.getAlbumsTracks(id)
-				.limit(ALBUM_MAX_PAGE_ITEMS)
-				.offset(offset)
-				.build();
-
-			try {
-				albumTracksResult = albumsTracksRequest.execute();
-			} catch (SpotifyWebApiException ignore) {}
+		while (albumTracksResult != null) {
+			var ids = Arrays.stream(albumTracksResult.getItems()).map(TrackSimplified::getId).filter(Objects::nonNull).toArray(String[]::new);
+			var trackResult = this.getSeveralTracks(ids, album);
+			if (trackResult == null) {
+				break;
+			}
 
-			if(albumTracksResult == null) break;
+			for (var track : trackResult) {
+				if (track != null) {
+					tracks.add(this.parseTrack(track, artistArtworkUrl, preview));
+				}
+			}
 
-			offset += ALBUM_MAX_PAGE_ITEMS;
+			if (albumTracksResult.getNext() == null || ++pages >= this.albumPageLimit) {
+				break;
+			}
 
-			var tracksRequest = spotifyApiAccessor.getSpotifyApi()
-				.getSeveralTracks(
-					Arrays.stream(albumTracksResult.getItems()).map(TrackSimplified::getId).toArray(String[]::new)
-				)
+			var albumsTracksRequest = spotifyApiAccessor.getSpotifyApi()
+				.getAlbumsTracks(id)
+				.limit(ALBUM_MAX_PAGE_ITEMS)
+				.offset(albumTracksResult.getOffset() + albumTracksResult.getItems().length)
 				.build();
 
-			Track[] trackResult = null;
-			List<TrackWrapper> trackWrappers = new ArrayList<>();
-
 			try {
-				trackResult = tracksRequest.execute();
-			} catch (SpotifyWebApiException ignore) {}
-
-			if (trackResult == null) break;
-
-			for (var track : trackResult) {
-				var trackAlbumCopy = copyAlbumSimplified(track.getAlbum());
-
-				Map<String, String> externalUrls = new HashMap<>();
-				externalUrls.put("spotify", albumResult.getExternalUrls().get("spotify"));
-
-				trackAlbumCopy.setExternalUrls(
-					new ExternalUrl.Builder().setExternalUrls(externalUrls).build()
-				);
-				trackAlbumCopy.setName(albumResult.getName());
-				trackAlbumCopy.setImages(albumResult.getImages());
-
-				// Modify album object.
-				var trackCopy = copyTrack(track);
-				trackCopy.setAlbum(trackAlbumCopy.build());
-
-				if (artistResult != null) {
-					trackWrappers.add(new TrackWrapper(trackCopy.build(), Arrays.asList(artistResult.getImages())));
-				}
+				albumTracksResult = spotifyApiAccessor.execute(albumsTracksRequest);
+			} catch (SpotifyWebApiException ignore) {
+				albumTracksResult = null;
 			}
-
-			tracks.addAll(this.parseTrackItems(trackWrappers, preview));
 		}
-		while (albumTracksResult.getNext() != null && ++pages < this.albumPageLimit);
 
 		if (tracks.isEmpty()) {
 			return AudioReference.NO_TRACK;
@@ -544,65 +702,224 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		);
 	}
 
+	/**
+	 * Loads up to 50 tracks with a single request.
+	 *
+	 * @param album the album to use for all tracks instead of the album of each track or null to use the album of each track
+	 * @return the tracks in the order of the given ids, null for unknown ids, or null if the request failed
+	 */
+	@Nullable
+	private List<SpotifyTrackMetadata> getSeveralTracks(String[] ids, @Nullable SpotifyTrackMetadata.Album album) throws IOException, ParseException {
+		if (ids.length == 0) {
+			return List.of();
+		}
+
+		var tracksRequest = spotifyApiAccessor.getSpotifyApi()
+			.getSeveralTracks(ids)
+			.build();
+
+		try {
+			return spotifyApiAccessor.execute(() -> SpotifyJsonParser.parseSeveralTracks(tracksRequest.getJson(), album));
+		} catch (SpotifyWebApiException ignore) {
+			return null;
+		}
+	}
+
 	public AudioItem getPlaylist(String id, boolean preview) throws IOException, ParseException {
+		var cacheKey = preview ? PREVIEW_PREFIX + id : id;
+		var cached = this.playlistCache.getIfPresent(cacheKey);
+		if (cached != null && this.isPlaylistUnchanged(id, cached)) {
+			log.debug("Using cached playlist {} with snapshot {}", id, cached.snapshotId);
+			var tracks = cached.cloneTracks();
+			this.preloadMirrors(tracks);
+			return cached.toPlaylist(tracks, null);
+		}
+
 		var playListRequest = spotifyApiAccessor.getSpotifyApi()
 			.getPlaylist(id)
+			.fields(PLAYLIST_FIELDS)
 			.build();
 
-		Playlist playList = null;
+		SpotifyJsonParser.PlaylistResult playList;
 
 		try {
-			playList = playListRequest.execute();
-		} catch (SpotifyWebApiException ignore) {}
-
-		if (playList == null) {
+			playList = spotifyApiAccessor.execute(() -> SpotifyJsonParser.parsePlaylist(playListRequest.getJson()));
+		} catch (SpotifyWebApiException ignore) {
 			return AudioReference.NO_TRACK;
 		}
 
 		var tracks = new ArrayList<AudioTrack>();
-		Paging<PlaylistTrack> page = null;
-		var offset = 0;
-		var pages = 0;
-		do {
-			var playListTracksRequest = spotifyApiAccessor.getSpotifyApi()
-				.getPlaylistsItems(id)
-				.limit(PLAYLIST_MAX_PAGE_ITEMS)
-				.offset(offset)
-				.build();
+		this.parsePlaylistItems(playList.tracks.tracks, preview, tracks);
+		var remainingPages = this.fetchRemainingPlaylistPages(id, playList.tracks);
+
+		// without any playable track on the first page there is nothing to start with, so wait for the rest
+		if (this.incrementalPlaylistLoading && !tracks.isEmpty() && !remainingPages.isDone()) {
+			var firstTracks = List.<AudioTrack>copyOf(tracks);
+			var remainingTracks = remainingPages.thenApply(pages -> {
+				var parsed = new ArrayList<AudioTrack>();
+				for (var page : pages) {
+					this.parsePlaylistItems(page, preview, parsed);
+				}
+				this.preloadMirrors(parsed);
+
+				var allTracks = new ArrayList<AudioTrack>(firstTracks.size() + parsed.size());
+				allTracks.addAll(firstTracks);
+				allTracks.addAll(parsed);
+				this.cachePlaylist(cacheKey, playList, allTracks);
+				return (List<AudioTrack>) parsed;
+			});
+			this.preloadMirrors(tracks);
+			return new CachedPlaylist(playList, List.of()).toPlaylist(tracks, remainingTracks);
+		}
 
-			try {
-				page = playListTracksRequest.execute();
-			} catch (SpotifyWebApiException ignore) {}
+		for (var page : this.awaitPlaylistPages(id, remainingPages)) {
+			this.parsePlaylistItems(page, preview, tracks);
+		}
+
+		if (tracks.isEmpty()) {
+			return AudioReference.NO_TRACK;
+		}
 
-			if (page == null) break;
+		this.preloadMirrors(tracks);
+		return this.cachePlaylist(cacheKey, playList, tracks).toPlaylist(tracks, null);
+	}
 
-			offset += PLAYLIST_MAX_PAGE_ITEMS;
+	/**
+	 * Checks whether the cached playlist is still up-to-date by comparing its snapshot id with the current one.
+	 * The snapshot id is only requested once per {@link #PLAYLIST_SNAPSHOT_CHECK_INTERVAL}.
+	 */
+	private boolean isPlaylistUnchanged(String id, CachedPlaylist cached) throws IOException, ParseException {
+		if (System.nanoTime() - cached.checkedAt < PLAYLIST_SNAPSHOT_CHECK_INTERVAL.toNanos()) {
+			return true;
+		}
 
-			for (var value : page.getItems()) {
-				var track = value.getTrack();
-				if (track == null || track.getType() == ModelObjectType.EPISODE /* || (!this.localFiles && track.getAsJsonObject().get("is_local").getAsBoolean()) */) {
-					continue;
+		var snapshotRequest = spotifyApiAccessor.getSpotifyApi()
+			.getPlaylist(id)
+			.fields("snapshot_id")
+			.build();
+
+		SpotifyJsonParser.PlaylistResult playlist;
+		try {
+			playlist = spotifyApiAccessor.execute(() -> SpotifyJsonParser.parsePlaylist(snapshotRequest.getJson()));
+		} catch (SpotifyWebApiException e) {
+			return false;
+		}
+
+		if (!Objects.equals(cached.snapshotId, playlist.snapshotId)) {
+			log.debug("Playlist {} changed from snapshot {}, reloading it", id, cached.snapshotId);
+			return false;
+		}
+		cached.checkedAt = System.nanoTime();
+		return true;
+	}
+
+	private CachedPlaylist cachePlaylist(String cacheKey, SpotifyJsonParser.PlaylistResult playList, List<AudioTrack> tracks) {
+		var cloned = new ArrayList<AudioTrack>(tracks.size());
+		// the returned tracks belong to the caller, so keep our own copies
+		for (var track : tracks) {
+			cloned.add(track.makeClone());
+		}
+		var cached = new CachedPlaylist(playList, cloned);
+		if (playList.snapshotId != null && !tracks.isEmpty()) {
+			this.playlistCache.put(cacheKey, cached);
+		}
+		return cached;
+	}
+
+	private void parsePlaylistItems(List<SpotifyTrackMetadata> items, boolean preview, List<AudioTrack> tracks) {
+		// episodes and removed tracks are already skipped by the parser
+		for (var track : items) {
+			tracks.add(this.parseTrack(track, null, preview));
+		}
+	}
+
+	/**
+	 * Fetches the items of the given playlist after the first page concurrently, up to the page limit. The first page is already part of the playlist response.
+	 * If a page fails to load, it and all following pages are dropped.
+	 *
+	 * @return a future completing with the items of the remaining pages in order
+	 */
+	private CompletableFuture<List<List<SpotifyTrackMetadata>>> fetchRemainingPlaylistPages(String id, SpotifyJsonParser.TrackPage firstPage) {
+		if (firstPage.next == null) {
+			return CompletableFuture.completedFuture(List.of());
+		}
+
+		var nextOffset = firstPage.offset + firstPage.itemCount;
+		var remaining = Math.max(0, firstPage.total - nextOffset);
+		var pageCount = Math.max(0, Math.min(this.playlistPageLimit - 1, (remaining + PLAYLIST_MAX_PAGE_ITEMS - 1) / PLAYLIST_MAX_PAGE_ITEMS));
+		var concurrency = this.playlistPageConcurrency;
+		var futures = new ArrayList<CompletableFuture<SpotifyJsonParser.TrackPage>>(pageCount);
+		for (var i = 0; i < pageCount; i++) {
+			var offset = nextOffset + i * PLAYLIST_MAX_PAGE_ITEMS;
+			// each page starts once the page fetched "concurrency" pages before it is done, which limits the pages in flight for this load
+			CompletableFuture<?> previous = i < concurrency ? CompletableFuture.completedFuture(null) : futures.get(i - concurrency);
+			futures.add(previous.handle((page, e) -> null).thenApplyAsync(unused -> {
+				try {
+					return this.getPlaylistPage(id, offset);
+				} catch (IOException | ParseException e) {
+					throw new CompletionException(e);
 				}
+			}, this.pageExecutor));
+		}
 
-				tracks.add(this.parseTrack(new TrackWrapper((Track) track, new ArrayList<>()), preview));
+		var pages = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApply(unused -> {
+			var items = new ArrayList<List<SpotifyTrackMetadata>>(futures.size());
+			for (var future : futures) {
+				var page = future.join();
+				if (page == null) {
+					break;
+				}
+				items.add(page.tracks);
+			}
+			return (List<List<SpotifyTrackMetadata>>) items;
+		});
+		// pages which did not start yet are skipped once the result is not needed anymore
+		pages.whenComplete((items, e) -> {
+			if (e != null) {
+				for (var future : futures) {
+					future.cancel(false);
+				}
 			}
+		});
+		return pages;
+	}
 
+	private List<List<SpotifyTrackMetadata>> awaitPlaylistPages(String id, CompletableFuture<List<List<SpotifyTrackMetadata>>> pages) throws IOException, ParseException {
+		try {
+			return pages.get();
+		} catch (InterruptedException e) {
+			pages.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading playlist " + id, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof ParseException) {
+				throw (ParseException) e.getCause();
+			}
+			// for example the FriendlyException of the request scheduler, which is meant to reach the user as is
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
 		}
-		while (page.getNext() != null && ++pages < this.playlistPageLimit);
+	}
 
-		if (tracks.isEmpty()) {
-			return AudioReference.NO_TRACK;
-		}
+	@Nullable
+	private SpotifyJsonParser.TrackPage getPlaylistPage(String id, int offset) throws IOException, ParseException {
+		var playListTracksRequest = spotifyApiAccessor.getSpotifyApi()
+			.getPlaylistsItems(id)
+			.fields(PLAYLIST_ITEM_FIELDS)
+			.limit(PLAYLIST_MAX_PAGE_ITEMS)
+			.offset(offset)
+			.build();
 
-		return new SpotifyAudioPlaylist(
-			playList.getName(),
-			tracks,
-			ExtendedAudioPlaylist.Type.PLAYLIST,
-			playList.getExternalUrls().get("spotify"),
-			playList.getImages()[0].getUrl(),
-			playList.getOwner().getDisplayName(),
-			playList.getTracks().getTotal()
-		);
+		try {
+			return spotifyApiAccessor.execute(() -> SpotifyJsonParser.parsePlaylistItems(playListTracksRequest.getJson()));
+		} catch (SpotifyWebApiException ignore) {
+			return null;
+		}
 	}
 
 	public AudioItem getArtist(String id, boolean preview) throws IOException, ParseException {
@@ -613,12 +930,13 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		Artist artist = null;
 
 		try {
-			artist = artistRequest.execute();
+			artist = spotifyApiAccessor.execute(artistRequest);
 		} catch (SpotifyWebApiException ignore) {}
 
 		if (artist == null) {
 			return AudioReference.NO_TRACK;
 		}
+		this.artistImageCache.put(artist.getId(), artist.getImages() == null ? List.of() : List.of(artist.getImages()));
 
 		var topTracksRequest = spotifyApiAccessor.getSpotifyApi()
 			.getArtistsTopTracks(id, CountryCode.valueOf(this.countryCode))
@@ -627,7 +945,7 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		Track[] tracks = null;
 
 		try {
-			tracks = topTracksRequest.execute();
+			tracks = spotifyApiAccessor.execute(topTracksRequest);
 		} catch (SpotifyWebApiException ignore) {}
 
 		if (tracks == null || tracks.length == 0) {
@@ -659,29 +977,114 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		Track track = null;
 
 		try {
-			track = trackRequest.execute();
+			track = spotifyApiAccessor.execute(trackRequest);
 		} catch (SpotifyWebApiException ignore) {}
 
 		if (track == null) {
 			return AudioReference.NO_TRACK;
 		}
 
-		var artistRequest = spotifyApiAccessor.getSpotifyApi()
-			.getArtist(track.getArtists()[0].getId())
-			.build();
+		var artistImages = this.getArtistImages(track.getArtists()[0].getId());
+		return this.parseTrack(new TrackWrapper(track, artistImages == null ? List.of() : artistImages), preview);
+	}
 
-		Artist artist = null;
+	/**
+	 * Loads many tracks at once, for example to restore a saved queue. Tracks are requested in batches of {@link #TRACKS_MAX_BATCH_SIZE}
+	 * and the images of their artists are requested once per distinct artist, instead of two requests per track.
+	 *
+	 * @param identifiers track ids, {@code spotify:track:} URIs or {@code open.spotify.com} track URLs
+	 * @return the tracks in the order of the given identifiers, null for identifiers which are not valid or not found
+	 */
+	public List<AudioTrack> getTracks(List<String> identifiers, boolean preview) throws IOException, ParseException {
+		var ids = new String[identifiers.size()];
+		for (var i = 0; i < ids.length; i++) {
+			ids[i] = parseTrackId(identifiers.get(i));
+		}
 
-		try {
-			artist = artistRequest.execute();
-		} catch (SpotifyWebApiException ignore) {}
+		var distinctIds = Arrays.stream(ids).filter(Objects::nonNull).distinct().toArray(String[]::new);
+		var loaded = new HashMap<String, SpotifyTrackMetadata>(distinctIds.length);
+		for (var offset = 0; offset < distinctIds.length; offset += TRACKS_MAX_BATCH_SIZE) {
+			var batch = Arrays.copyOfRange(distinctIds, offset, Math.min(offset + TRACKS_MAX_BATCH_SIZE, distinctIds.length));
+			var batchResult = this.getSeveralTracks(batch, null);
+			if (batchResult == null) {
+				continue;
+			}
+			// tracks are returned in request order, their ids may differ if Spotify relinked them
+			for (var i = 0; i < batchResult.size() && i < batch.length; i++) {
+				if (batchResult.get(i) != null) {
+					loaded.put(batch[i], batchResult.get(i));
+				}
+			}
+		}
+
+		var artistImages = this.getArtistImages(loaded.values().stream().map(SpotifySourceManager::getFirstArtistId).collect(Collectors.toList()));
+		var tracks = new ArrayList<AudioTrack>(ids.length);
+		for (var id : ids) {
+			var track = id == null ? null : loaded.get(id);
+			tracks.add(track == null ? null : this.parseTrack(track, getFirstImageUrl(artistImages.get(getFirstArtistId(track))), preview));
+		}
+		this.preloadMirrors(tracks.stream().filter(Objects::nonNull).collect(Collectors.toList()));
+		return tracks;
+	}
 
-		if (artist != null) {
-			return this.parseTrack(new TrackWrapper(track, Arrays.asList(artist.getImages())), preview);
+	@Nullable
+	private static String parseTrackId(@Nullable String identifier) {
+		if (identifier == null) {
+			return null;
+		}
+		identifier = identifier.trim();
+		if (identifier.startsWith(TRACK_URI_PREFIX)) {
+			identifier = identifier.substring(TRACK_URI_PREFIX.length());
 		} else {
-			return this.parseTrack(new TrackWrapper(track, new ArrayList<>()), preview);
+			var matcher = URL_PATTERN.matcher(identifier);
+			if (matcher.find()) {
+				return matcher.group("type").equals("track") ? matcher.group("identifier") : null;
+			}
 		}
+		return TRACK_ID_PATTERN.matcher(identifier).matches() ? identifier : null;
+	}
 
+	/**
+	 * @return the images of the given artist or null if they could not be loaded
+	 */
+	@Nullable
+	private List<Image> getArtistImages(String artistId) throws IOException, ParseException {
+		return this.getArtistImages(List.of(artistId)).get(artistId);
+	}
+
+	/**
+	 * Looks up the images of the given artists in the artist cache and loads all missing artists in batches.
+	 *
+	 * @return the images by artist id, artists which could not be loaded are missing
+	 */
+	private Map<String, List<Image>> getArtistImages(Collection<String> artistIds) throws IOException, ParseException {
+		var ids = artistIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+		var images = new HashMap<String, List<Image>>(this.artistImageCache.getAllPresent(ids));
+		var missing = ids.stream().filter(id -> !images.containsKey(id)).collect(Collectors.toList());
+		for (var i = 0; i < missing.size(); i += ARTISTS_MAX_BATCH_SIZE) {
+			var batch = missing.subList(i, Math.min(i + ARTISTS_MAX_BATCH_SIZE, missing.size()));
+			var artistRequest = spotifyApiAccessor.getSpotifyApi()
+				.getSeveralArtists(batch.toArray(String[]::new))
+				.build();
+
+			Artist[] artists;
+			try {
+				artists = spotifyApiAccessor.execute(artistRequest);
+			} catch (SpotifyWebApiException e) {
+				log.debug("Failed to load artists {}", batch, e);
+				continue;
+			}
+
+			for (var artist : artists) {
+				if (artist == null) {
+					continue;
+				}
+				var artistImages = artist.getImages() == null ? List.<Image>of() : List.of(artist.getImages());
+				this.artistImageCache.put(artist.getId(), artistImages);
+				images.put(artist.getId(), artistImages);
+			}
+		}
+		return images;
 	}
 
 	private List<AudioTrack> parseTrackItems(List<TrackWrapper> tracks, boolean preview) {
@@ -702,32 +1105,51 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 	}
 
 	private AudioTrack parseTrack(TrackWrapper trackWrapper, boolean preview) {
-		Track track = trackWrapper.getTrack();
+		return this.parseTrack(SpotifyTrackMetadata.of(trackWrapper.getTrack()), getFirstImageUrl(trackWrapper.getArtistImages()), preview);
+	}
+
+	private AudioTrack parseTrack(SpotifyTrackMetadata track, @Nullable String artistArtworkUrl, boolean preview) {
+		var artist = track.getArtistCount() == 0 ? null : track.getArtist(0);
+		var album = track.getAlbum();
 
 		return new SpotifyAudioTrack(
 			new AudioTrackInfo(
 				track.getName(),
-				track.getArtists()[0].getName().isEmpty() ? "Unknown" : track.getArtists()[0].getName(),
+				artist == null || artist.getName() == null || artist.getName().isEmpty() ? "Unknown" : artist.getName(),
 				preview ? PREVIEW_LENGTH : track.getDurationMs(),
 				track.getId() != null ? track.getId() : "local",
 				false,
-				track.getExternalUrls().get("spotify"),
-				track.getAlbum().getImages().length == 0 ? null : track.getAlbum().getImages()[0].getUrl(),
-				track.getExternalIds().getExternalIds().get("isrc")
+				track.getUrl(),
+				album == null ? null : album.getArtworkUrl(),
+				track.getIsrc()
 			),
-			trackWrapper.getTrack(),
-			track.getAlbum().getName(),
-			track.getAlbum().getExternalUrls().get("spotify"),
-			track.getArtists()[0].getExternalUrls().get("spotify"),
-			trackWrapper.getArtistImages().isEmpty() ? null : trackWrapper.getArtistImages().get(0).getUrl(),
+			track,
+			album == null ? null : album.getName(),
+			album == null ? null : album.getUrl(),
+			artist == null ? null : artist.getUrl(),
+			artistArtworkUrl,
 			track.getPreviewUrl(),
 			preview,
 			this
 		);
 	}
 
+	@Nullable
+	private static String getFirstArtistId(SpotifyTrackMetadata track) {
+		return track.getArtistCount() == 0 ? null : track.getArtist(0).getId();
+	}
+
+	@Nullable
+	private static String getFirstImageUrl(@Nullable List<Image> images) {
+		return images == null || images.isEmpty() ? null : images.get(0).getUrl();
+	}
+
 	@Override
 	public void shutdown() {
+		super.shutdown();
+		this.spotifyApiAccessor.close();
+		this.spToken.close();
+		this.pageExecutor.shutdownNow();
 		try {
 			this.httpInterfaceManager.close();
 		} catch (IOException e) {
@@ -749,45 +1171,86 @@ public class SpotifySourceManager extends MirroringAudioSourceManager implements
 		return spotifyApiAccessor.getSpotifyApi();
 	}
 
-	private AlbumSimplified.Builder copyAlbumSimplified(AlbumSimplified album) {
-		return new AlbumSimplified.Builder()
-			.setAlbumGroup(album.getAlbumGroup())
-			.setAlbumType(album.getAlbumType())
-			.setArtists(album.getArtists())
-			.setAvailableMarkets(album.getAvailableMarkets())
-			.setExternalUrls(album.getExternalUrls())
-			.setHref(album.getHref())
-			.setId(album.getId())
-			.setImages(album.getImages())
-			.setName(album.getName())
-			.setReleaseDate(album.getReleaseDate())
-			.setReleaseDatePrecision(album.getReleaseDatePrecision())
-			.setRestrictions(album.getRestrictions())
-			.setType(album.getType())
-			.setUri(album.getUri());
-	}
-
-	private Track.Builder copyTrack(Track track) {
-		return new Track.Builder()
-			.setAlbum(track.getAlbum())
-			.setArtists(track.getArtists())
-			.setAvailableMarkets(track.getAvailableMarkets())
-			.setDiscNumber(track.getDiscNumber())
-			.setDurationMs(track.getDurationMs())
-			.setExplicit(track.getIsExplicit())
-			.setExternalIds(track.getExternalIds())
-			.setExternalUrls(track.getExternalUrls())
-			.setHref(track.getHref())
-			.setId(track.getId())
-			.setIsPlayable(track.getIsPlayable())
-			.setLinkedFrom(track.getLinkedFrom())
-			.setRestrictions(track.getRestrictions())
-			.setName(track.getName())
-			.setPopularity(track.getPopularity())
-			.setPreviewUrl(track.getPreviewUrl())
-			.setTrackNumber(track.getTrackNumber())
-			.setType(track.getType())
-			.setUri(track.getUri());
+	public SpotifyRequestScheduler getRequestScheduler() {
+		return spotifyApiAccessor.getRequestScheduler();
+	}
+
+	private static final class CachedLyrics {
+
+		private static final CachedLyrics NONE = new CachedLyrics(null, null);
+
+		// start time in milliseconds and text of each line, null if the track has no lyrics
+		@Nullable
+		private final long[] startTimes;
+		@Nullable
+		private final String[] words;
+
+		private CachedLyrics(@Nullable long[] startTimes, @Nullable String[] words) {
+			this.startTimes = startTimes;
+			this.words = words;
+		}
+
+		@Nullable
+		private AudioLyrics toLyrics() {
+			if (this.startTimes == null || this.words == null) {
+				return null;
+			}
+			var lines = new ArrayList<AudioLyrics.Line>(this.words.length);
+			for (var i = 0; i < this.words.length; i++) {
+				lines.add(new BasicAudioLyrics.BasicLine(Duration.ofMillis(this.startTimes[i]), null, this.words[i]));
+			}
+			return new BasicAudioLyrics("spotify", "MusixMatch", null, lines);
+		}
+
+	}
+
+	private static final class CachedSearch {
+
+		private final List<SpotifyTrackMetadata> tracks;
+		private final String[] artistArtworkUrls;
+
+		private CachedSearch(List<SpotifyTrackMetadata> tracks, String[] artistArtworkUrls) {
+			this.tracks = tracks;
+			this.artistArtworkUrls = artistArtworkUrls;
+		}
+
+	}
+
+	private static final class CachedPlaylist {
+
+		@Nullable
+		private final String snapshotId;
+		private final String name;
+		private final String url;
+		@Nullable
+		private final String artworkUrl;
+		private final String author;
+		private final Integer totalTracks;
+		private final List<AudioTrack> tracks;
+		private volatile long checkedAt = System.nanoTime();
+
+		private CachedPlaylist(SpotifyJsonParser.PlaylistResult playlist, List<AudioTrack> tracks) {
+			this.snapshotId = playlist.snapshotId;
+			this.name = playlist.name;
+			this.url = playlist.url;
+			this.artworkUrl = playlist.artworkUrl;
+			this.author = playlist.author;
+			this.totalTracks = playlist.tracks.total;
+			this.tracks = tracks;
+		}
+
+		private List<AudioTrack> cloneTracks() {
+			var cloned = new ArrayList<AudioTrack>(this.tracks.size());
+			for (var track : this.tracks) {
+				cloned.add(track.makeClone());
+			}
+			return cloned;
+		}
+
+		private SpotifyAudioPlaylist toPlaylist(List<AudioTrack> tracks, @Nullable CompletableFuture<List<AudioTrack>> remainingTracks) {
+			return new SpotifyAudioPlaylist(this.name, tracks, ExtendedAudioPlaylist.Type.PLAYLIST, this.url, this.artworkUrl, this.author, this.totalTracks, remainingTracks);
+		}
+
 	}
 
 }
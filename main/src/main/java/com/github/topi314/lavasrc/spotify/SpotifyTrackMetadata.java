@@ -0,0 +1,390 @@
+package com.github.topi314.lavasrc.spotify;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.michaelthelin.spotify.enums.AlbumType;
+import se.michaelthelin.spotify.enums.ModelObjectType;
+import se.michaelthelin.spotify.enums.ReleaseDatePrecision;
+import se.michaelthelin.spotify.model_objects.specification.*;
+
+import java.util.Map;
+
+/**
+ * Immutable projection of the Spotify {@link Track} model holding only the fields LavaSrc exposes.
+ * Integers which are unknown are stored as -1 to avoid boxing.
+ */
+public final class SpotifyTrackMetadata {
+
+	@Nullable
+	private final String id;
+	@Nullable
+	private final String name;
+	private final int durationMs;
+	private final int popularity;
+	private final int trackNumber;
+	private final int discNumber;
+	private final boolean explicit;
+	@Nullable
+	private final String previewUrl;
+	@Nullable
+	private final String uri;
+	@Nullable
+	private final String url;
+	@Nullable
+	private final String isrc;
+	@Nullable
+	private final Album album;
+	@NotNull
+	private final Artist[] artists;
+
+	public SpotifyTrackMetadata(@Nullable String id, @Nullable String name, int durationMs, int popularity, int trackNumber, int discNumber, boolean explicit, @Nullable String previewUrl, @Nullable String uri, @Nullable String url, @Nullable String isrc, @Nullable Album album, @NotNull Artist[] artists) {
+		this.id = id;
+		this.name = name;
+		this.durationMs = durationMs;
+		this.popularity = popularity;
+		this.trackNumber = trackNumber;
+		this.discNumber = discNumber;
+		this.explicit = explicit;
+		this.previewUrl = previewUrl;
+		this.uri = uri;
+		this.url = url;
+		this.isrc = isrc;
+		this.album = album;
+		this.artists = artists;
+	}
+
+	@NotNull
+	public static SpotifyTrackMetadata of(@NotNull Track track) {
+		return of(track, track.getAlbum() == null ? null : Album.of(track.getAlbum()));
+	}
+
+	/**
+	 * @param album the album projection to use instead of the one of the track, so tracks of the same album can share it
+	 */
+	@NotNull
+	public static SpotifyTrackMetadata of(@NotNull Track track, @Nullable Album album) {
+		var trackArtists = track.getArtists() == null ? new ArtistSimplified[0] : track.getArtists();
+		var artists = new Artist[trackArtists.length];
+		for (var i = 0; i < trackArtists.length; i++) {
+			artists[i] = Artist.of(trackArtists[i]);
+		}
+		return new SpotifyTrackMetadata(
+			track.getId(),
+			track.getName(),
+			orUnknown(track.getDurationMs()),
+			orUnknown(track.getPopularity()),
+			orUnknown(track.getTrackNumber()),
+			orUnknown(track.getDiscNumber()),
+			Boolean.TRUE.equals(track.getIsExplicit()),
+			track.getPreviewUrl(),
+			track.getUri(),
+			getSpotifyUrl(track.getExternalUrls()),
+			track.getExternalIds() == null ? null : track.getExternalIds().getExternalIds().get("isrc"),
+			album,
+			artists
+		);
+	}
+
+	/**
+	 * Builds a new {@link Track} from this projection. Fields which are not part of the projection are not set.
+	 */
+	@NotNull
+	public Track toTrack() {
+		var artists = new ArtistSimplified[this.artists.length];
+		for (var i = 0; i < this.artists.length; i++) {
+			artists[i] = this.artists[i].toArtistSimplified();
+		}
+		return new Track.Builder()
+			.setType(ModelObjectType.TRACK)
+			.setId(this.id)
+			.setName(this.name)
+			.setDurationMs(toNullable(this.durationMs))
+			.setPopularity(toNullable(this.popularity))
+			.setTrackNumber(toNullable(this.trackNumber))
+			.setDiscNumber(toNullable(this.discNumber))
+			.setExplicit(this.explicit)
+			.setPreviewUrl(this.previewUrl)
+			.setUri(this.uri)
+			.setExternalUrls(toExternalUrl(this.url))
+			.setExternalIds(new ExternalId.Builder().setExternalIds(this.isrc == null ? Map.of() : Map.of("isrc", this.isrc)).build())
+			.setAlbum(this.album == null ? null : this.album.toAlbumSimplified())
+			.setArtists(artists)
+			.build();
+	}
+
+	@Nullable
+	public String getId() {
+		return this.id;
+	}
+
+	@Nullable
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return the duration in milliseconds or -1 if unknown
+	 */
+	public int getDurationMs() {
+		return this.durationMs;
+	}
+
+	/**
+	 * @return the popularity between 0 and 100 or -1 if unknown
+	 */
+	public int getPopularity() {
+		return this.popularity;
+	}
+
+	public int getTrackNumber() {
+		return this.trackNumber;
+	}
+
+	public int getDiscNumber() {
+		return this.discNumber;
+	}
+
+	public boolean isExplicit() {
+		return this.explicit;
+	}
+
+	@Nullable
+	public String getPreviewUrl() {
+		return this.previewUrl;
+	}
+
+	@Nullable
+	public String getUri() {
+		return this.uri;
+	}
+
+	@Nullable
+	public String getUrl() {
+		return this.url;
+	}
+
+	@Nullable
+	public String getIsrc() {
+		return this.isrc;
+	}
+
+	@Nullable
+	public Album getAlbum() {
+		return this.album;
+	}
+
+	@NotNull
+	public Artist[] getArtists() {
+		return this.artists.clone();
+	}
+
+	int getArtistCount() {
+		return this.artists.length;
+	}
+
+	Artist getArtist(int index) {
+		return this.artists[index];
+	}
+
+	static int orUnknown(@Nullable Integer value) {
+		return value == null ? -1 : value;
+	}
+
+	@Nullable
+	static Integer toNullable(int value) {
+		return value == -1 ? null : value;
+	}
+
+	@Nullable
+	static String getSpotifyUrl(@Nullable ExternalUrl externalUrl) {
+		return externalUrl == null ? null : externalUrl.get("spotify");
+	}
+
+	static ExternalUrl toExternalUrl(@Nullable String spotifyUrl) {
+		return new ExternalUrl.Builder().setExternalUrls(spotifyUrl == null ? Map.of() : Map.of("spotify", spotifyUrl)).build();
+	}
+
+	public static final class Album {
+
+		@Nullable
+		private final String id;
+		@Nullable
+		private final String name;
+		@Nullable
+		private final AlbumType albumType;
+		@Nullable
+		private final String releaseDate;
+		@Nullable
+		private final ReleaseDatePrecision releaseDatePrecision;
+		@Nullable
+		private final String url;
+		@NotNull
+		private final String[] imageUrls;
+		// width and height of each image, -1 if unknown
+		@NotNull
+		private final int[] imageSizes;
+
+		public Album(@Nullable String id, @Nullable String name, @Nullable AlbumType albumType, @Nullable String releaseDate, @Nullable ReleaseDatePrecision releaseDatePrecision, @Nullable String url, @NotNull String[] imageUrls, @NotNull int[] imageSizes) {
+			if (imageSizes.length != imageUrls.length * 2) {
+				throw new IllegalArgumentException("Image sizes must contain a width and height for each image");
+			}
+			this.id = id;
+			this.name = name;
+			this.albumType = albumType;
+			this.releaseDate = releaseDate;
+			this.releaseDatePrecision = releaseDatePrecision;
+			this.url = url;
+			this.imageUrls = imageUrls;
+			this.imageSizes = imageSizes;
+		}
+
+		@NotNull
+		public static Album of(@NotNull AlbumSimplified album) {
+			return of(album.getId(), album.getName(), album.getAlbumType(), album.getReleaseDate(), album.getReleaseDatePrecision(), album.getExternalUrls(), album.getImages());
+		}
+
+		@NotNull
+		public static Album of(@NotNull se.michaelthelin.spotify.model_objects.specification.Album album) {
+			return of(album.getId(), album.getName(), album.getAlbumType(), album.getReleaseDate(), album.getReleaseDatePrecision(), album.getExternalUrls(), album.getImages());
+		}
+
+		private static Album of(String id, String name, AlbumType albumType, String releaseDate, ReleaseDatePrecision releaseDatePrecision, ExternalUrl externalUrls, Image[] images) {
+			if (images == null) {
+				images = new Image[0];
+			}
+			var imageUrls = new String[images.length];
+			var imageSizes = new int[images.length * 2];
+			for (var i = 0; i < images.length; i++) {
+				imageUrls[i] = images[i].getUrl();
+				imageSizes[i * 2] = orUnknown(images[i].getWidth());
+				imageSizes[i * 2 + 1] = orUnknown(images[i].getHeight());
+			}
+			return new Album(id, name, albumType, releaseDate, releaseDatePrecision, getSpotifyUrl(externalUrls), imageUrls, imageSizes);
+		}
+
+		@NotNull
+		public AlbumSimplified toAlbumSimplified() {
+			var images = new Image[this.imageUrls.length];
+			for (var i = 0; i < images.length; i++) {
+				images[i] = new Image.Builder()
+					.setUrl(this.imageUrls[i])
+					.setWidth(toNullable(this.imageSizes[i * 2]))
+					.setHeight(toNullable(this.imageSizes[i * 2 + 1]))
+					.build();
+			}
+			return new AlbumSimplified.Builder()
+				.setType(ModelObjectType.ALBUM)
+				.setId(this.id)
+				.setName(this.name)
+				.setAlbumType(this.albumType)
+				.setReleaseDate(this.releaseDate)
+				.setReleaseDatePrecision(this.releaseDatePrecision)
+				.setExternalUrls(toExternalUrl(this.url))
+				.setImages(images)
+				.build();
+		}
+
+		@Nullable
+		public String getId() {
+			return this.id;
+		}
+
+		@Nullable
+		public String getName() {
+			return this.name;
+		}
+
+		@Nullable
+		public AlbumType getAlbumType() {
+			return this.albumType;
+		}
+
+		@Nullable
+		public String getReleaseDate() {
+			return this.releaseDate;
+		}
+
+		@Nullable
+		public ReleaseDatePrecision getReleaseDatePrecision() {
+			return this.releaseDatePrecision;
+		}
+
+		@Nullable
+		public String getUrl() {
+			return this.url;
+		}
+
+		public int getImageCount() {
+			return this.imageUrls.length;
+		}
+
+		public String getImageUrl(int index) {
+			return this.imageUrls[index];
+		}
+
+		public int getImageWidth(int index) {
+			return this.imageSizes[index * 2];
+		}
+
+		public int getImageHeight(int index) {
+			return this.imageSizes[index * 2 + 1];
+		}
+
+		/**
+		 * @return the url of the largest image or null if the album has no images
+		 */
+		@Nullable
+		public String getArtworkUrl() {
+			return this.imageUrls.length == 0 ? null : this.imageUrls[0];
+		}
+
+	}
+
+	public static final class Artist {
+
+		@Nullable
+		private final String id;
+		@Nullable
+		private final String name;
+		@Nullable
+		private final String url;
+
+		public Artist(@Nullable String id, @Nullable String name, @Nullable String url) {
+			this.id = id;
+			this.name = name;
+			this.url = url;
+		}
+
+		@NotNull
+		public static Artist of(@NotNull ArtistSimplified artist) {
+			return new Artist(artist.getId(), artist.getName(), getSpotifyUrl(artist.getExternalUrls()));
+		}
+
+		@NotNull
+		public ArtistSimplified toArtistSimplified() {
+			return new ArtistSimplified.Builder()
+				.setType(ModelObjectType.ARTIST)
+				.setId(this.id)
+				.setName(this.name)
+				.setExternalUrls(toExternalUrl(this.url))
+				.build();
+		}
+
+		@Nullable
+		public String getId() {
+			return this.id;
+		}
+
+		@Nullable
+		public String getName() {
+			return this.name;
+		}
+
+		@Nullable
+		public String getUrl() {
+			return this.url;
+		}
+
+	}
+
+}
@@ -0,0 +1,161 @@
+package com.github.topi314.lavasrc.spotify;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sedmelluq.discord.lavaplayer.tools.DataFormatTools;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.michaelthelin.spotify.enums.AlbumType;
+import se.michaelthelin.spotify.enums.ReleaseDatePrecision;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes the {@link SpotifyTrackMetadata} of a {@link SpotifyAudioTrack} into encoded tracks.
+ * <p>
+ * The metadata starts with a version byte. Versions 0 and 1 are the legacy format written by {@link DataFormatTools#writeNullableText},
+ * where 0 means no metadata and 1 is followed by the Gson serialized {@link Track}. Version 2 is a compact binary format containing only the fields LavaSrc exposes.
+ */
+final class SpotifyTrackMetadataCodec {
+
+	private static final Logger log = LoggerFactory.getLogger(SpotifyTrackMetadataCodec.class);
+	private static final int VERSION_NONE = 0;
+	private static final int VERSION_LEGACY_JSON = 1;
+	private static final int VERSION_COMPACT = 2;
+	// the counts are written as unsigned byte and short, anything above is dropped
+	private static final int MAX_IMAGES = 0xFF;
+	private static final int MAX_ARTISTS = 0xFFFF;
+
+	private SpotifyTrackMetadataCodec() {
+	}
+
+	static void encode(@Nullable SpotifyTrackMetadata metadata, DataOutput output) throws IOException {
+		if (metadata == null) {
+			output.writeByte(VERSION_NONE);
+			return;
+		}
+		output.writeByte(VERSION_COMPACT);
+		DataFormatTools.writeNullableText(output, metadata.getId());
+		DataFormatTools.writeNullableText(output, metadata.getName());
+		output.writeInt(metadata.getDurationMs());
+		output.writeInt(metadata.getPopularity());
+		output.writeInt(metadata.getTrackNumber());
+		output.writeInt(metadata.getDiscNumber());
+		output.writeBoolean(metadata.isExplicit());
+		DataFormatTools.writeNullableText(output, metadata.getPreviewUrl());
+		DataFormatTools.writeNullableText(output, metadata.getUri());
+		DataFormatTools.writeNullableText(output, metadata.getUrl());
+		DataFormatTools.writeNullableText(output, metadata.getIsrc());
+
+		var album = metadata.getAlbum();
+		output.writeBoolean(album != null);
+		if (album != null) {
+			DataFormatTools.writeNullableText(output, album.getId());
+			DataFormatTools.writeNullableText(output, album.getName());
+			DataFormatTools.writeNullableText(output, album.getAlbumType() == null ? null : album.getAlbumType().name());
+			DataFormatTools.writeNullableText(output, album.getReleaseDate());
+			DataFormatTools.writeNullableText(output, album.getReleaseDatePrecision() == null ? null : album.getReleaseDatePrecision().name());
+			DataFormatTools.writeNullableText(output, album.getUrl());
+			var imageCount = Math.min(album.getImageCount(), MAX_IMAGES);
+			output.writeByte(imageCount);
+			for (var i = 0; i < imageCount; i++) {
+				DataFormatTools.writeNullableText(output, album.getImageUrl(i));
+				output.writeInt(album.getImageWidth(i));
+				output.writeInt(album.getImageHeight(i));
+			}
+		}
+
+		var artistCount = Math.min(metadata.getArtistCount(), MAX_ARTISTS);
+		output.writeShort(artistCount);
+		for (var i = 0; i < artistCount; i++) {
+			var artist = metadata.getArtist(i);
+			DataFormatTools.writeNullableText(output, artist.getId());
+			DataFormatTools.writeNullableText(output, artist.getName());
+			DataFormatTools.writeNullableText(output, artist.getUrl());
+		}
+	}
+
+	@Nullable
+	static SpotifyTrackMetadata decode(DataInput input) throws IOException {
+		// tracks encoded before the metadata was added end right before the position lavaplayer appends
+		if (input instanceof DataInputStream && ((DataInputStream) input).available() <= Long.BYTES) {
+			return null;
+		}
+
+		var version = input.readUnsignedByte();
+		switch (version) {
+			case VERSION_NONE:
+				return null;
+
+			case VERSION_LEGACY_JSON:
+				var json = input.readUTF();
+				try {
+					// the legacy format was written by Gson, so it uses the field names and not the Spotify API names
+					var track = new Gson().fromJson(json, Track.class);
+					return track == null ? null : SpotifyTrackMetadata.of(track);
+				} catch (JsonParseException e) {
+					log.debug("Failed to decode legacy Spotify track metadata", e);
+					return null;
+				}
+
+			case VERSION_COMPACT:
+				return decodeCompact(input);
+
+			default:
+				throw new IOException("Unknown Spotify track metadata version " + version);
+		}
+	}
+
+	private static SpotifyTrackMetadata decodeCompact(DataInput input) throws IOException {
+		var id = DataFormatTools.readNullableText(input);
+		var name = DataFormatTools.readNullableText(input);
+		var durationMs = input.readInt();
+		var popularity = input.readInt();
+		var trackNumber = input.readInt();
+		var discNumber = input.readInt();
+		var explicit = input.readBoolean();
+		var previewUrl = DataFormatTools.readNullableText(input);
+		var uri = DataFormatTools.readNullableText(input);
+		var url = DataFormatTools.readNullableText(input);
+		var isrc = DataFormatTools.readNullableText(input);
+
+		SpotifyTrackMetadata.Album album = null;
+		if (input.readBoolean()) {
+			var albumId = DataFormatTools.readNullableText(input);
+			var albumName = DataFormatTools.readNullableText(input);
+			var albumType = DataFormatTools.readNullableText(input);
+			var releaseDate = DataFormatTools.readNullableText(input);
+			var releaseDatePrecision = DataFormatTools.readNullableText(input);
+			var albumUrl = DataFormatTools.readNullableText(input);
+			var imageUrls = new String[input.readUnsignedByte()];
+			var imageSizes = new int[imageUrls.length * 2];
+			for (var i = 0; i < imageUrls.length; i++) {
+				imageUrls[i] = DataFormatTools.readNullableText(input);
+				imageSizes[i * 2] = input.readInt();
+				imageSizes[i * 2 + 1] = input.readInt();
+			}
+			album = new SpotifyTrackMetadata.Album(
+				albumId,
+				albumName,
+				albumType == null ? null : AlbumType.valueOf(albumType),
+				releaseDate,
+				releaseDatePrecision == null ? null : ReleaseDatePrecision.valueOf(releaseDatePrecision),
+				albumUrl,
+				imageUrls,
+				imageSizes
+			);
+		}
+
+		var artists = new SpotifyTrackMetadata.Artist[input.readUnsignedShort()];
+		for (var i = 0; i < artists.length; i++) {
+			artists[i] = new SpotifyTrackMetadata.Artist(DataFormatTools.readNullableText(input), DataFormatTools.readNullableText(input), DataFormatTools.readNullableText(input));
+		}
+		return new SpotifyTrackMetadata(id, name, durationMs, popularity, trackNumber, discNumber, explicit, previewUrl, uri, url, isrc, album, artists);
+	}
+
+}
@@ -16,6 +16,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
 
 public class YandexMusicAudioTrack extends ExtendedAudioTrack {
 
@@ -33,7 +34,10 @@ public class YandexMusicAudioTrack extends ExtendedAudioTrack {
 
 	@Override
 	public void process(LocalAudioTrackExecutor executor) throws Exception {
-		var downloadLink = this.getDownloadURL(this.trackInfo.identifier);
+		var downloadLink = this.sourceManager.takePrewarmed(this.trackInfo.identifier, String.class);
+		if (downloadLink == null) {
+			downloadLink = this.getDownloadURL(this.trackInfo.identifier);
+		}
 		try (var httpInterface = this.sourceManager.getHttpInterface()) {
 			try (var stream = new PersistentHttpStream(httpInterface, new URI(downloadLink), this.trackInfo.length)) {
 				processDelegate(new Mp3AudioTrack(this.trackInfo, stream), executor);
@@ -41,6 +45,11 @@ public class YandexMusicAudioTrack extends ExtendedAudioTrack {
 		}
 	}
 
+	@Override
+	public CompletableFuture<Void> prewarm() {
+		return this.sourceManager.prewarm(this.trackInfo.identifier, () -> this.getDownloadURL(this.trackInfo.identifier));
+	}
+
 	@Override
 	protected AudioTrack makeShallowClone() {
 		return new YandexMusicAudioTrack(this.trackInfo, this.sourceManager);
@@ -0,0 +1,272 @@
+package com.github.topi314.lavasrc.mirror;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioReference;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.DelegatedAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.InternalAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MirroringAudioTrackIndexTest {
+
+	@TempDir
+	Path dir;
+
+	private Path path;
+	private AudioPlayerManager audioPlayerManager;
+	private final TestSourceManager mirrorSource = new TestSourceManager("mirror");
+	private final TestSourceManager source = new TestSourceManager("source");
+
+	@BeforeEach
+	void setUp() {
+		this.path = this.dir.resolve("mirrors.idx");
+		this.audioPlayerManager = new DefaultAudioPlayerManager();
+		this.audioPlayerManager.registerSourceManager(this.mirrorSource);
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.audioPlayerManager.shutdown();
+	}
+
+	@Test
+	void reloadsEntriesAfterRestart() throws IOException {
+		try (var index = this.openIndex()) {
+			index.put(this.track("a", "ISRC00000001"), this.mirror("mirror-a"), this.audioPlayerManager);
+			index.put(this.track("b", null), this.mirror("mirror-b"), this.audioPlayerManager);
+		}
+
+		try (var index = this.openIndex()) {
+			// two keys for a, one for b
+			assertEquals(3, index.size());
+			assertMirror("mirror-a", index.get(this.track("a", null), this.audioPlayerManager));
+			assertMirror("mirror-b", index.get(this.track("b", null), this.audioPlayerManager));
+			// a different track with the same ISRC shares the mirror
+			assertMirror("mirror-a", index.get(this.track("other", "ISRC00000001"), this.audioPlayerManager));
+		}
+	}
+
+	@Test
+	void dropsPartiallyWrittenLastRecord() throws IOException {
+		try (var index = this.openIndex()) {
+			index.put(this.track("a", null), this.mirror("mirror-a"), this.audioPlayerManager);
+		}
+		var sizeBefore = Files.size(this.path);
+		try (var index = this.openIndex()) {
+			index.put(this.track("b", null), this.mirror("mirror-b"), this.audioPlayerManager);
+		}
+		var sizeAfter = Files.size(this.path);
+
+		// simulate a crash in the middle of writing the record of b
+		try (var channel = FileChannel.open(this.path, StandardOpenOption.WRITE)) {
+			channel.truncate(sizeBefore + (sizeAfter - sizeBefore) / 2);
+		}
+
+		try (var index = this.openIndex()) {
+			assertEquals(sizeBefore, index.fileSize());
+			assertMirror("mirror-a", index.get(this.track("a", null), this.audioPlayerManager));
+			assertNull(index.get(this.track("b", null), this.audioPlayerManager));
+			index.put(this.track("c", null), this.mirror("mirror-c"), this.audioPlayerManager);
+		}
+
+		// records appended after the torn one must be readable as well
+		try (var index = this.openIndex()) {
+			assertMirror("mirror-a", index.get(this.track("a", null), this.audioPlayerManager));
+			assertMirror("mirror-c", index.get(this.track("c", null), this.audioPlayerManager));
+		}
+	}
+
+	@Test
+	void keepsRemovalsAfterRestart() throws IOException {
+		try (var index = this.openIndex()) {
+			index.put(this.track("a", "ISRC00000001"), this.mirror("mirror-a"), this.audioPlayerManager);
+			index.remove(this.track("a", "ISRC00000001"));
+			assertNull(index.get(this.track("a", null), this.audioPlayerManager));
+		}
+
+		try (var index = this.openIndex()) {
+			assertEquals(0, index.size());
+			assertNull(index.get(this.track("a", "ISRC00000001"), this.audioPlayerManager));
+		}
+	}
+
+	@Test
+	void compactionKeepsLatestLiveEntries() throws IOException {
+		try (var index = this.openIndex()) {
+			index.put(this.track("a", null), this.mirror("mirror-a1"), this.audioPlayerManager);
+			index.put(this.track("a", null), this.mirror("mirror-a2"), this.audioPlayerManager);
+			index.put(this.track("b", null), this.mirror("mirror-b"), this.audioPlayerManager);
+			index.remove(this.track("b", null));
+			index.put(this.track("c", "ISRC00000003"), this.mirror("mirror-c"), this.audioPlayerManager);
+
+			var sizeBefore = index.fileSize();
+			index.compact();
+			assertTrue(index.fileSize() < sizeBefore);
+			this.assertCompacted(index);
+		}
+
+		try (var index = this.openIndex()) {
+			this.assertCompacted(index);
+		}
+	}
+
+	@Test
+	void compactsExpiredEntries() throws IOException, InterruptedException {
+		try (var index = new MirroringAudioTrackIndex(this.path, Duration.ofMillis(50), Duration.ZERO)) {
+			index.put(this.track("a", "ISRC00000001"), this.mirror("mirror-a"), this.audioPlayerManager);
+			index.put(this.track("b", null), this.mirror("mirror-b"), this.audioPlayerManager);
+			var sizeBefore = index.fileSize();
+
+			// nothing is overwritten or removed, the entries only expire
+			Thread.sleep(100);
+			index.compactIfNeeded();
+
+			assertEquals(0, index.size());
+			assertTrue(index.fileSize() < sizeBefore);
+			assertEquals(Integer.BYTES * 2, index.fileSize());
+		}
+	}
+
+	@Test
+	void ignoresTracksWithoutUniqueIdentifier() throws IOException {
+		try (var index = this.openIndex()) {
+			var local = new TestTrack(new AudioTrackInfo("Title", "Author", 1000, "local", false, null, null, null), this.source, false);
+			index.put(local, this.mirror("mirror-local"), this.audioPlayerManager);
+			assertEquals(0, index.size());
+			assertNull(index.get(local, this.audioPlayerManager));
+		}
+	}
+
+	private void assertCompacted(MirroringAudioTrackIndex index) {
+		assertEquals(3, index.size());
+		assertMirror("mirror-a2", index.get(this.track("a", null), this.audioPlayerManager));
+		assertNull(index.get(this.track("b", null), this.audioPlayerManager));
+		assertMirror("mirror-c", index.get(this.track("c", null), this.audioPlayerManager));
+		assertMirror("mirror-c", index.get(this.track("other", "ISRC00000003"), this.audioPlayerManager));
+	}
+
+	private MirroringAudioTrackIndex openIndex() throws IOException {
+		return new MirroringAudioTrackIndex(this.path, MirroringAudioTrackIndex.DEFAULT_MAX_AGE, Duration.ZERO);
+	}
+
+	private MirroringAudioTrack track(String identifier, String isrc) {
+		return new TestTrack(new AudioTrackInfo("Title " + identifier, "Author", 1000, identifier, false, null, null, isrc), this.source, true);
+	}
+
+	private AudioTrack mirror(String identifier) {
+		return new TestMirrorTrack(new AudioTrackInfo("Mirror", "Author", 1000, identifier, false, null, null, null), this.mirrorSource);
+	}
+
+	private static void assertMirror(String identifier, AudioTrack mirror) {
+		assertNotNull(mirror);
+		assertEquals(identifier, mirror.getIdentifier());
+	}
+
+	private static final class TestTrack extends MirroringAudioTrack {
+
+		private final AudioSourceManager source;
+		private final boolean uniqueIdentifier;
+
+		private TestTrack(AudioTrackInfo trackInfo, AudioSourceManager source, boolean uniqueIdentifier) {
+			super(trackInfo, null, null, null, null, null, false, null);
+			this.source = source;
+			this.uniqueIdentifier = uniqueIdentifier;
+		}
+
+		@Override
+		protected InternalAudioTrack createAudioTrack(AudioTrackInfo trackInfo, SeekableInputStream inputStream) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean hasUniqueIdentifier() {
+			return this.uniqueIdentifier;
+		}
+
+		@Override
+		public AudioSourceManager getSourceManager() {
+			return this.source;
+		}
+
+	}
+
+	private static final class TestMirrorTrack extends DelegatedAudioTrack {
+
+		private final AudioSourceManager source;
+
+		private TestMirrorTrack(AudioTrackInfo trackInfo, AudioSourceManager source) {
+			super(trackInfo);
+			this.source = source;
+		}
+
+		@Override
+		public void process(LocalAudioTrackExecutor executor) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public AudioSourceManager getSourceManager() {
+			return this.source;
+		}
+
+	}
+
+	private static final class TestSourceManager implements AudioSourceManager {
+
+		private final String name;
+
+		private TestSourceManager(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getSourceName() {
+			return this.name;
+		}
+
+		@Override
+		public AudioItem loadItem(AudioPlayerManager manager, AudioReference reference) {
+			return null;
+		}
+
+		@Override
+		public boolean isTrackEncodable(AudioTrack track) {
+			return true;
+		}
+
+		@Override
+		public void encodeTrack(AudioTrack track, DataOutput output) {
+		}
+
+		@Override
+		public AudioTrack decodeTrack(AudioTrackInfo trackInfo, DataInput input) {
+			return new TestMirrorTrack(trackInfo, this);
+		}
+
+		@Override
+		public void shutdown() {
+		}
+
+	}
+
+}
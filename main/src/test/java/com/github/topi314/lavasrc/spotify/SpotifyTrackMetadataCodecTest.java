@@ -0,0 +1,185 @@
+package com.github.topi314.lavasrc.spotify;
+
+import com.google.gson.Gson;
+import com.sedmelluq.discord.lavaplayer.tools.DataFormatTools;
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.enums.AlbumType;
+import se.michaelthelin.spotify.enums.ReleaseDatePrecision;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ExternalId;
+import se.michaelthelin.spotify.model_objects.specification.ExternalUrl;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpotifyTrackMetadataCodecTest {
+
+	// lavaplayer appends the track position after the source specific data
+	private static final int TRAILER_BYTES = Long.BYTES;
+
+	@Test
+	void roundTripsCompactFormat() throws IOException {
+		var album = new SpotifyTrackMetadata.Album(
+			"album-id",
+			"Album",
+			AlbumType.ALBUM,
+			"2020-01-31",
+			ReleaseDatePrecision.DAY,
+			"https://open.spotify.com/album/album-id",
+			new String[]{"https://i.scdn.co/large", "https://i.scdn.co/small"},
+			new int[]{640, 640, 64, 64}
+		);
+		var artists = new SpotifyTrackMetadata.Artist[]{
+			new SpotifyTrackMetadata.Artist("artist-1", "First", "https://open.spotify.com/artist/artist-1"),
+			new SpotifyTrackMetadata.Artist(null, "Second", null)
+		};
+		var metadata = new SpotifyTrackMetadata("track-id", "Track", 123456, 42, 3, 1, true, null, "spotify:track:track-id", "https://open.spotify.com/track/track-id", "USRC17607839", album, artists);
+
+		var decoded = decode(encode(metadata), true);
+
+		assertNotNull(decoded);
+		assertEquals("track-id", decoded.getId());
+		assertEquals("Track", decoded.getName());
+		assertEquals(123456, decoded.getDurationMs());
+		assertEquals(42, decoded.getPopularity());
+		assertEquals(3, decoded.getTrackNumber());
+		assertEquals(1, decoded.getDiscNumber());
+		assertTrue(decoded.isExplicit());
+		assertNull(decoded.getPreviewUrl());
+		assertEquals("spotify:track:track-id", decoded.getUri());
+		assertEquals("https://open.spotify.com/track/track-id", decoded.getUrl());
+		assertEquals("USRC17607839", decoded.getIsrc());
+
+		var decodedAlbum = decoded.getAlbum();
+		assertNotNull(decodedAlbum);
+		assertEquals("album-id", decodedAlbum.getId());
+		assertEquals("Album", decodedAlbum.getName());
+		assertEquals(AlbumType.ALBUM, decodedAlbum.getAlbumType());
+		assertEquals("2020-01-31", decodedAlbum.getReleaseDate());
+		assertEquals(ReleaseDatePrecision.DAY, decodedAlbum.getReleaseDatePrecision());
+		assertEquals(2, decodedAlbum.getImageCount());
+		assertEquals("https://i.scdn.co/small", decodedAlbum.getImageUrl(1));
+		assertEquals(64, decodedAlbum.getImageWidth(1));
+		assertEquals(64, decodedAlbum.getImageHeight(1));
+
+		assertEquals(2, decoded.getArtistCount());
+		assertEquals("First", decoded.getArtist(0).getName());
+		assertNull(decoded.getArtist(1).getId());
+		assertEquals("Second", decoded.getArtist(1).getName());
+	}
+
+	@Test
+	void roundTripsMissingMetadata() throws IOException {
+		assertNull(decode(encode(null), true));
+	}
+
+	@Test
+	void clampsImageCount() throws IOException {
+		var imageUrls = new String[300];
+		Arrays.fill(imageUrls, "https://i.scdn.co/image");
+		var album = new SpotifyTrackMetadata.Album(null, null, null, null, null, null, imageUrls, new int[imageUrls.length * 2]);
+		var artists = new SpotifyTrackMetadata.Artist[]{new SpotifyTrackMetadata.Artist("artist-id", "Artist", null)};
+		var metadata = new SpotifyTrackMetadata("track-id", "Track", 1000, -1, -1, -1, false, null, null, null, null, album, artists);
+
+		var decoded = decode(encode(metadata), true);
+
+		assertNotNull(decoded);
+		assertNotNull(decoded.getAlbum());
+		assertEquals(255, decoded.getAlbum().getImageCount());
+		// the fields after the images must still line up
+		assertEquals(1, decoded.getArtistCount());
+		assertEquals("Artist", decoded.getArtist(0).getName());
+	}
+
+	@Test
+	void decodesLegacyJson() throws IOException {
+		var track = new Track.Builder()
+			.setId("track-id")
+			.setName("Track")
+			.setDurationMs(123456)
+			.setPopularity(42)
+			.setTrackNumber(3)
+			.setDiscNumber(1)
+			.setExplicit(false)
+			.setUri("spotify:track:track-id")
+			.setExternalUrls(new ExternalUrl.Builder().setExternalUrls(Map.of("spotify", "https://open.spotify.com/track/track-id")).build())
+			.setExternalIds(new ExternalId.Builder().setExternalIds(Map.of("isrc", "USRC17607839")).build())
+			.setArtists(new ArtistSimplified.Builder().setId("artist-id").setName("Artist").build())
+			.build();
+
+		// tracks encoded by older versions contain the Gson serialized track as nullable text
+		var bytes = new ByteArrayOutputStream();
+		var output = new DataOutputStream(bytes);
+		DataFormatTools.writeNullableText(output, new Gson().toJson(track));
+		output.flush();
+
+		var decoded = decode(bytes.toByteArray(), true);
+
+		assertNotNull(decoded);
+		assertEquals("track-id", decoded.getId());
+		assertEquals("Track", decoded.getName());
+		assertEquals(123456, decoded.getDurationMs());
+		assertEquals(42, decoded.getPopularity());
+		assertFalse(decoded.isExplicit());
+		assertEquals("https://open.spotify.com/track/track-id", decoded.getUrl());
+		assertEquals("USRC17607839", decoded.getIsrc());
+		assertNull(decoded.getAlbum());
+		assertEquals(1, decoded.getArtistCount());
+		assertEquals("Artist", decoded.getArtist(0).getName());
+	}
+
+	@Test
+	void ignoresInvalidLegacyJson() throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		var output = new DataOutputStream(bytes);
+		DataFormatTools.writeNullableText(output, "{not json");
+		output.flush();
+
+		assertNull(decode(bytes.toByteArray(), true));
+	}
+
+	@Test
+	void returnsNullForTracksWithoutMetadata() throws IOException {
+		// tracks encoded before the metadata was added only contain the trailer
+		assertNull(decode(new byte[0], true));
+	}
+
+	@Test
+	void failsOnTruncatedInput() {
+		var artists = new SpotifyTrackMetadata.Artist[]{new SpotifyTrackMetadata.Artist("artist-id", "Artist", null)};
+		var metadata = new SpotifyTrackMetadata("track-id", "Track", 1000, -1, -1, -1, false, null, null, null, null, null, artists);
+
+		assertThrows(EOFException.class, () -> {
+			var bytes = encode(metadata);
+			decode(Arrays.copyOf(bytes, bytes.length - 4), false);
+		});
+	}
+
+	@Test
+	void failsOnUnknownVersion() {
+		assertThrows(IOException.class, () -> decode(new byte[]{(byte) 0x7F}, true));
+	}
+
+	private static byte[] encode(SpotifyTrackMetadata metadata) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		var output = new DataOutputStream(bytes);
+		SpotifyTrackMetadataCodec.encode(metadata, output);
+		output.flush();
+		return bytes.toByteArray();
+	}
+
+	private static SpotifyTrackMetadata decode(byte[] data, boolean withTrailer) throws IOException {
+		var bytes = withTrailer ? Arrays.copyOf(data, data.length + TRAILER_BYTES) : data;
+		return SpotifyTrackMetadataCodec.decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+}
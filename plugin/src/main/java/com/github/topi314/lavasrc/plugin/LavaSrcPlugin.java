@@ -7,7 +7,11 @@ import com.github.topi314.lavasearch.api.SearchManagerConfiguration;
 import com.github.topi314.lavasrc.applemusic.AppleMusicSourceManager;
 import com.github.topi314.lavasrc.deezer.DeezerAudioSourceManager;
 import com.github.topi314.lavasrc.flowerytts.FloweryTTSSourceManager;
+import com.github.topi314.lavasrc.mirror.CircuitBreaker;
 import com.github.topi314.lavasrc.mirror.DefaultMirroringAudioTrackResolver;
+import com.github.topi314.lavasrc.mirror.MirroringAudioTrackCache;
+import com.github.topi314.lavasrc.mirror.MirroringAudioTrackIndex;
+import com.github.topi314.lavasrc.mirror.MirroringAudioTrackPreloader;
 import com.github.topi314.lavasrc.spotify.SpotifySourceManager;
 import com.github.topi314.lavasrc.yandexmusic.YandexMusicSourceManager;
 import com.github.topi314.lavasrc.youtube.YoutubeSearchManager;
@@ -16,10 +20,16 @@ import dev.arbjerg.lavalink.api.AudioPlayerManagerConfiguration;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Supplier;
+
 @Service
-public class LavaSrcPlugin implements AudioPlayerManagerConfiguration, SearchManagerConfiguration, LyricsManagerConfiguration {
+public class LavaSrcPlugin implements AudioPlayerManagerConfiguration, SearchManagerConfiguration, LyricsManagerConfiguration, DisposableBean {
 
 	private static final Logger log = LoggerFactory.getLogger(LavaSrcPlugin.class);
 
@@ -32,20 +42,56 @@ public class LavaSrcPlugin implements AudioPlayerManagerConfiguration, SearchMan
 	private YandexMusicSourceManager yandexMusic;
 	private FloweryTTSSourceManager flowerytts;
 	private YoutubeSearchManager youtube;
+	private MirroringAudioTrackIndex mirrorIndex;
+	private MirroringAudioTrackPreloader mirrorPreloader;
 
-	public LavaSrcPlugin(LavaSrcConfig pluginConfig, SourcesConfig sourcesConfig, LyricsSourcesConfig lyricsSourcesConfig, SpotifyConfig spotifyConfig, AppleMusicConfig appleMusicConfig, DeezerConfig deezerConfig, YandexMusicConfig yandexMusicConfig, FloweryTTSConfig floweryTTSConfig, YouTubeConfig youTubeConfig) {
+	public LavaSrcPlugin(LavaSrcConfig pluginConfig, MirrorConfig mirrorConfig, SourcesConfig sourcesConfig, LyricsSourcesConfig lyricsSourcesConfig, SpotifyConfig spotifyConfig, AppleMusicConfig appleMusicConfig, DeezerConfig deezerConfig, YandexMusicConfig yandexMusicConfig, FloweryTTSConfig floweryTTSConfig, YouTubeConfig youTubeConfig) {
 		log.info("Loading LavaSrc plugin...");
 		this.sourcesConfig = sourcesConfig;
 		this.lyricsSourcesConfig = lyricsSourcesConfig;
 
+		MirroringAudioTrackCache mirrorCache = null;
+		if (mirrorConfig.isCache()) {
+			// shared between all mirroring sources, so the same ISRC only needs to be resolved once
+			mirrorCache = new MirroringAudioTrackCache(mirrorConfig.getCacheMaxSize(), Duration.ofSeconds(mirrorConfig.getCacheTtl()), Duration.ofSeconds(Math.max(0, mirrorConfig.getMissCacheTtl())));
+		}
+		if (mirrorConfig.isIndex()) {
+			try {
+				this.mirrorIndex = new MirroringAudioTrackIndex(Path.of(mirrorConfig.getIndexPath()), Duration.ofSeconds(mirrorConfig.getIndexMaxAge()), Duration.ofSeconds(Math.max(0, mirrorConfig.getIndexCompactionInterval())));
+			} catch (IOException e) {
+				log.error("Failed to open mirror index {}, continuing without it", mirrorConfig.getIndexPath(), e);
+			}
+		}
+		if (mirrorCache != null && mirrorConfig.isPreload()) {
+			this.mirrorPreloader = new MirroringAudioTrackPreloader(mirrorConfig.getPreloadConcurrency(), mirrorConfig.getPreloadDepth(), mirrorConfig.getPreloadBudget()).start();
+		}
+		Supplier<CircuitBreaker> circuitBreakerFactory = null;
+		if (mirrorConfig.isCircuitBreaker()) {
+			circuitBreakerFactory = () -> new CircuitBreaker(mirrorConfig.getCircuitBreakerWindow(), mirrorConfig.getCircuitBreakerMinimumCalls(), mirrorConfig.getCircuitBreakerFailureRate(), Duration.ofSeconds(mirrorConfig.getCircuitBreakerOpenDuration()));
+		}
+		var providerTimeout = mirrorConfig.getProviderTimeout() > 0 ? Duration.ofMillis(mirrorConfig.getProviderTimeout()) : null;
+		var mirrorResolver = new DefaultMirroringAudioTrackResolver(pluginConfig.getProviders(), providerTimeout, circuitBreakerFactory);
+		if (mirrorConfig.isRacing()) {
+			mirrorResolver.setHedgeDelay(Duration.ofMillis(Math.max(0, mirrorConfig.getHedgeDelay())));
+		}
+
 		if (sourcesConfig.isSpotify() || lyricsSourcesConfig.isSpotify()) {
-			this.spotify = new SpotifySourceManager(spotifyConfig.getClientId(), spotifyConfig.getClientSecret(), spotifyConfig.getSpDc(), spotifyConfig.getCountryCode(), unused -> manager, new DefaultMirroringAudioTrackResolver(pluginConfig.getProviders()));
+			this.spotify = new SpotifySourceManager(spotifyConfig.getClientId(), spotifyConfig.getClientSecret(), spotifyConfig.getSpDc(), spotifyConfig.getCountryCode(), unused -> manager, mirrorResolver);
 			if (spotifyConfig.getPlaylistLoadLimit() > 0) {
 				this.spotify.setPlaylistPageLimit(spotifyConfig.getPlaylistLoadLimit());
 			}
+			if (spotifyConfig.getPlaylistPageConcurrency() > 0) {
+				this.spotify.setPlaylistPageConcurrency(spotifyConfig.getPlaylistPageConcurrency());
+			}
 			if (spotifyConfig.getAlbumLoadLimit() > 0) {
 				this.spotify.setAlbumPageLimit(spotifyConfig.getAlbumLoadLimit());
 			}
+			this.spotify.setMirrorCache(mirrorCache);
+			this.spotify.setMirrorIndex(this.mirrorIndex);
+			this.spotify.setMirrorPreloader(this.mirrorPreloader);
+			if (mirrorConfig.getTimeout() > 0) {
+				this.spotify.setMirrorTimeout(Duration.ofMillis(mirrorConfig.getTimeout()));
+			}
 			/* TODO: Removed as for now
 			if(spotifyConfig.isLocalFiles()) {
 				this.spotify.setLocalFiles(spotifyConfig.isLocalFiles());
@@ -53,13 +99,19 @@ public class LavaSrcPlugin implements AudioPlayerManagerConfiguration, SearchMan
 			 */
 		}
 		if (sourcesConfig.isAppleMusic()) {
-			this.appleMusic = new AppleMusicSourceManager(pluginConfig.getProviders(), appleMusicConfig.getMediaAPIToken(), appleMusicConfig.getCountryCode(), unused -> manager);
+			this.appleMusic = new AppleMusicSourceManager(appleMusicConfig.getMediaAPIToken(), appleMusicConfig.getCountryCode(), unused -> manager, mirrorResolver);
 			if (appleMusicConfig.getPlaylistLoadLimit() > 0) {
 				appleMusic.setPlaylistPageLimit(appleMusicConfig.getPlaylistLoadLimit());
 			}
 			if (appleMusicConfig.getAlbumLoadLimit() > 0) {
 				appleMusic.setAlbumPageLimit(appleMusicConfig.getAlbumLoadLimit());
 			}
+			appleMusic.setMirrorCache(mirrorCache);
+			appleMusic.setMirrorIndex(this.mirrorIndex);
+			appleMusic.setMirrorPreloader(this.mirrorPreloader);
+			if (mirrorConfig.getTimeout() > 0) {
+				appleMusic.setMirrorTimeout(Duration.ofMillis(mirrorConfig.getTimeout()));
+			}
 		}
 		if (sourcesConfig.isDeezer() || lyricsSourcesConfig.isDeezer()) {
 			this.deezer = new DeezerAudioSourceManager(deezerConfig.getMasterDecryptionKey());
@@ -184,4 +236,19 @@ public class LavaSrcPlugin implements AudioPlayerManagerConfiguration, SearchMan
 		}
 		return manager;
 	}
+
+	@Override
+	public void destroy() {
+		if (this.mirrorPreloader != null) {
+			this.mirrorPreloader.shutdown();
+		}
+		// flushes the index so mirrors resolved right before the shutdown are not lost
+		if (this.mirrorIndex != null) {
+			try {
+				this.mirrorIndex.close();
+			} catch (IOException e) {
+				log.error("Failed to close mirror index", e);
+			}
+		}
+	}
 }
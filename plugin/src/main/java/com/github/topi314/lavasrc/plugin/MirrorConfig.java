@@ -0,0 +1,200 @@
+package com.github.topi314.lavasrc.plugin;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "plugins.lavasrc.mirror")
+@Component
+public class MirrorConfig {
+
+	private boolean cache = false;
+	private long cacheMaxSize = 10000;
+	private long cacheTtl = 3600;
+	private long missCacheTtl = 300;
+	private boolean index = false;
+	private String indexPath = "lavasrc-mirrors.idx";
+	private long indexMaxAge = 2592000;
+	private long indexCompactionInterval = 3600;
+	private boolean racing = false;
+	private long hedgeDelay = 250;
+	private long timeout = 0;
+	private long providerTimeout = 0;
+	private boolean circuitBreaker = false;
+	private int circuitBreakerWindow = 20;
+	private int circuitBreakerMinimumCalls = 10;
+	private double circuitBreakerFailureRate = 0.5;
+	private long circuitBreakerOpenDuration = 30;
+	private boolean preload = false;
+	private int preloadDepth = 10;
+	private int preloadConcurrency = 2;
+	private int preloadBudget = 500;
+
+	public boolean isCache() {
+		return this.cache;
+	}
+
+	public void setCache(boolean cache) {
+		this.cache = cache;
+	}
+
+	public long getCacheMaxSize() {
+		return this.cacheMaxSize;
+	}
+
+	public void setCacheMaxSize(long cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+
+	public long getCacheTtl() {
+		return this.cacheTtl;
+	}
+
+	public void setCacheTtl(long cacheTtl) {
+		this.cacheTtl = cacheTtl;
+	}
+
+	public long getMissCacheTtl() {
+		return this.missCacheTtl;
+	}
+
+	public void setMissCacheTtl(long missCacheTtl) {
+		this.missCacheTtl = missCacheTtl;
+	}
+
+	public boolean isIndex() {
+		return this.index;
+	}
+
+	public void setIndex(boolean index) {
+		this.index = index;
+	}
+
+	public String getIndexPath() {
+		return this.indexPath;
+	}
+
+	public void setIndexPath(String indexPath) {
+		this.indexPath = indexPath;
+	}
+
+	public long getIndexMaxAge() {
+		return this.indexMaxAge;
+	}
+
+	public void setIndexMaxAge(long indexMaxAge) {
+		this.indexMaxAge = indexMaxAge;
+	}
+
+	public long getIndexCompactionInterval() {
+		return this.indexCompactionInterval;
+	}
+
+	public void setIndexCompactionInterval(long indexCompactionInterval) {
+		this.indexCompactionInterval = indexCompactionInterval;
+	}
+
+	public boolean isRacing() {
+		return this.racing;
+	}
+
+	public void setRacing(boolean racing) {
+		this.racing = racing;
+	}
+
+	public long getHedgeDelay() {
+		return this.hedgeDelay;
+	}
+
+	public void setHedgeDelay(long hedgeDelay) {
+		this.hedgeDelay = hedgeDelay;
+	}
+
+	public long getTimeout() {
+		return this.timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public long getProviderTimeout() {
+		return this.providerTimeout;
+	}
+
+	public void setProviderTimeout(long providerTimeout) {
+		this.providerTimeout = providerTimeout;
+	}
+
+	public boolean isCircuitBreaker() {
+		return this.circuitBreaker;
+	}
+
+	public void setCircuitBreaker(boolean circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	public int getCircuitBreakerWindow() {
+		return this.circuitBreakerWindow;
+	}
+
+	public void setCircuitBreakerWindow(int circuitBreakerWindow) {
+		this.circuitBreakerWindow = circuitBreakerWindow;
+	}
+
+	public int getCircuitBreakerMinimumCalls() {
+		return this.circuitBreakerMinimumCalls;
+	}
+
+	public void setCircuitBreakerMinimumCalls(int circuitBreakerMinimumCalls) {
+		this.circuitBreakerMinimumCalls = circuitBreakerMinimumCalls;
+	}
+
+	public double getCircuitBreakerFailureRate() {
+		return this.circuitBreakerFailureRate;
+	}
+
+	public void setCircuitBreakerFailureRate(double circuitBreakerFailureRate) {
+		this.circuitBreakerFailureRate = circuitBreakerFailureRate;
+	}
+
+	public long getCircuitBreakerOpenDuration() {
+		return this.circuitBreakerOpenDuration;
+	}
+
+	public void setCircuitBreakerOpenDuration(long circuitBreakerOpenDuration) {
+		this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+	}
+
+	public boolean isPreload() {
+		return this.preload;
+	}
+
+	public void setPreload(boolean preload) {
+		this.preload = preload;
+	}
+
+	public int getPreloadDepth() {
+		return this.preloadDepth;
+	}
+
+	public void setPreloadDepth(int preloadDepth) {
+		this.preloadDepth = preloadDepth;
+	}
+
+	public int getPreloadConcurrency() {
+		return this.preloadConcurrency;
+	}
+
+	public void setPreloadConcurrency(int preloadConcurrency) {
+		this.preloadConcurrency = preloadConcurrency;
+	}
+
+	public int getPreloadBudget() {
+		return this.preloadBudget;
+	}
+
+	public void setPreloadBudget(int preloadBudget) {
+		this.preloadBudget = preloadBudget;
+	}
+
+}
@@ -12,6 +12,7 @@ public class SpotifyConfig {
 	private String spDc;
 	private String countryCode = "US";
 	private int playlistLoadLimit = 6;
+	private int playlistPageConcurrency = 4;
 	private int albumLoadLimit = 6;
 	private boolean localFiles = false;
 
@@ -55,6 +56,14 @@ public class SpotifyConfig {
 		this.playlistLoadLimit = playlistLoadLimit;
 	}
 
+	public int getPlaylistPageConcurrency() {
+		return this.playlistPageConcurrency;
+	}
+
+	public void setPlaylistPageConcurrency(int playlistPageConcurrency) {
+		this.playlistPageConcurrency = playlistPageConcurrency;
+	}
+
 	public int getAlbumLoadLimit() {
 		return this.albumLoadLimit;
 	}